@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Process;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs datasource operations off the calling thread.
+ * Writes go through a single thread so they are serialized in submission order,
+ * reads run concurrently on a fixed pool.
+ * Every operation returns a future and optionally reports to a callback,
+ * which is run on the supplied handler's thread (or the worker thread if handler is null).
+ */
+public class AsyncDatasource<T> {
+    /**
+     * receives result of an async operation
+     */
+    public interface Callback<R> {
+        public void onResult(R result);
+
+        public void onError(Throwable error);
+    }
+
+    private final Datasource<T> datasource;
+    private final Handler handler;
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+
+    /**
+     * @param datasource datasource to wrap
+     * @param handler    handler to deliver callbacks on, usually created on ui thread. may be null
+     * @param readers    number of concurrent reader threads
+     */
+    public AsyncDatasource(Datasource<T> datasource, Handler handler, int readers) {
+        if (readers < 1) {
+            throw new IllegalArgumentException("need at least one reader thread");
+        }
+        this.datasource = datasource;
+        this.handler = handler;
+        String name = datasource.getMetaData().getTableName();
+        this.writer = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("yodalib-" + name + "-writer"));
+        this.readers = Executors.newFixedThreadPool(readers, new BackgroundThreadFactory("yodalib-" + name + "-reader"));
+    }
+
+    public Datasource<T> getDatasource() {
+        return datasource;
+    }
+
+    public Future<List<T>> get(final String whereClause, final String[] selectionArgs, Callback<List<T>> callback) {
+        return read(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return datasource.get(whereClause, selectionArgs);
+            }
+        }, callback);
+    }
+
+    public Future<T> getById(final long id, Callback<T> callback) {
+        return read(new Callable<T>() {
+            @Override
+            public T call() {
+                return datasource.getById(id);
+            }
+        }, callback);
+    }
+
+    /**
+     * async version of Datasource.query, you have to close the cursor
+     */
+    public Future<Cursor> query(final boolean distinct, final String[] columns, final String selection,
+                                final String[] selectionArgs, final String groupBy, final String having,
+                                final String orderBy, final String limit, Callback<Cursor> callback) {
+        return read(new Callable<Cursor>() {
+            @Override
+            public Cursor call() {
+                Cursor cursor = datasource.query(distinct, columns, selection, selectionArgs,
+                        groupBy, having, orderBy, limit);
+                //fill the window on the worker thread instead of when first accessed
+                cursor.getCount();
+                return cursor;
+            }
+        }, callback);
+    }
+
+    public Future<Long> insert(final T t, Callback<Long> callback) {
+        return write(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return datasource.insert(t);
+            }
+        }, callback);
+    }
+
+    public Future<long[]> insertAll(final Collection<T> items, Callback<long[]> callback) {
+        return write(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                return datasource.insertAll(items);
+            }
+        }, callback);
+    }
+
+    public Future<Void> delete(final String whereClause, final String[] selectionArgs, Callback<Void> callback) {
+        return write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                datasource.delete(whereClause, selectionArgs);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * runs arbitrary reading task on reader pool
+     */
+    public <R> Future<R> read(Callable<R> task, Callback<R> callback) {
+        return readers.submit(new CallbackTask<R>(task, callback));
+    }
+
+    /**
+     * runs arbitrary writing task on the writer thread
+     */
+    public <R> Future<R> write(Callable<R> task, Callback<R> callback) {
+        return writer.submit(new CallbackTask<R>(task, callback));
+    }
+
+    /**
+     * stops accepting new operations and closes the datasource once pending reads and writes are done
+     */
+    public void close() {
+        readers.shutdown();
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                boolean interrupted = false;
+                while (!readers.isTerminated()) {
+                    try {
+                        readers.awaitTermination(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                datasource.close();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.shutdown();
+    }
+
+    private <R> void deliver(final Callback<R> callback, final R result, final Throwable error) {
+        if (callback == null) {
+            return;
+        }
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                if (error == null) {
+                    callback.onResult(result);
+                } else {
+                    callback.onError(error);
+                }
+            }
+        };
+        if (handler == null) {
+            delivery.run();
+        } else {
+            handler.post(delivery);
+        }
+    }
+
+    private class CallbackTask<R> implements Callable<R> {
+        private final Callable<R> task;
+        private final Callback<R> callback;
+
+        private CallbackTask(Callable<R> task, Callback<R> callback) {
+            this.task = task;
+            this.callback = callback;
+        }
+
+        @Override
+        public R call() throws Exception {
+            R result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                deliver(callback, null, e);
+                throw e;
+            }
+            deliver(callback, result, null);
+            return result;
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private BackgroundThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, name + "-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Notified after a datasource wrote to its table.
+ * Called on the writing thread, so return quickly.
+ */
+public interface ChangeListener {
+    public enum Operation {
+        INSERT,
+        /**
+         * updates and upserts
+         */
+        UPDATE,
+        DELETE
+    }
+
+    /**
+     * @param datasource datasource that performed the write
+     * @param operation  kind of write
+     * @param ids        affected row ids, null if they are not known (e.g. delete by where clause)
+     */
+    public void onChange(Datasource<?> datasource, Operation operation, long[] ids);
+}
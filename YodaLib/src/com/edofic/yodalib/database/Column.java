@@ -61,4 +61,28 @@ public @interface Column {
      * @return column position
      */
     public int position() default 1;
+
+    /**
+     * creates an index on this column
+     * defaults to false
+     *
+     * @return is this column indexed
+     */
+    public boolean indexed() default false;
+
+    /**
+     * creates a unique index on this column, implies indexed
+     * defaults to false
+     *
+     * @return are values of this column unique
+     */
+    public boolean unique() default false;
+
+    /**
+     * converter used to store this field, see TypeConverter
+     * defaults to the converter registered in TypeConverters or direct mapping
+     *
+     * @return converter class
+     */
+    public Class<? extends TypeConverter> converter() default TypeConverter.class;
 }
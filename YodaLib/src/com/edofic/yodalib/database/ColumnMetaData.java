@@ -17,8 +17,12 @@ package com.edofic.yodalib.database;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 
 /**
  * User: andraz
@@ -26,13 +30,21 @@ import java.lang.reflect.Field;
  * Time: 1:00 PM
  * Meta data about a single column
  * Contains name, index in the cursor, type, field and method to fill it
+ * Primitive fields are read and written with primitive accessors so nothing is boxed,
+ * wrapper types, String, Date, enums and byte[] are nullable.
  */
 class ColumnMetaData {
     private int index;
     private String name;
     private boolean primary = false;
     private boolean autoincrement = false;
+    private boolean indexed = false;
+    private boolean unique = false;
     private Type type;
+    private Kind kind;
+    private boolean nullable;
+    private HashMap<String, Object> enumConstants;
+    private TypeConverter converter;
     private Field field;
 
     public ColumnMetaData(int index, Field field) {
@@ -49,16 +61,33 @@ class ColumnMetaData {
         }
         primary = column.primaryKey();
         autoincrement = column.autoIncrement();
+        unique = column.unique();
+        indexed = unique || column.indexed();
 
         Class fieldType = field.getType();
-        if (fieldType == long.class) {
-            type = Type.INTEGER;
-        } else if (fieldType == double.class) {
-            type = Type.FLOAT;
-        } else if (fieldType == String.class) {
-            type = Type.STRING;
-        } else {
-            type = Type.BLOB;
+        if (column.converter() != TypeConverter.class) {
+            try {
+                converter = column.converter().newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("can't instantiate converter of column " + name, e);
+            }
+        } else if (Kind.of(fieldType) == null) {
+            converter = TypeConverters.get(fieldType);
+        }
+        if (converter != null) {
+            fieldType = converter.getStorageType();
+        }
+        kind = Kind.of(fieldType);
+        if (kind == null) {
+            throw new IllegalArgumentException("unsupported type " + fieldType.getName() + " of column " + name);
+        }
+        type = kind.type;
+        nullable = converter != null || !fieldType.isPrimitive();
+        if (kind == Kind.ENUM) {
+            enumConstants = new HashMap<String, Object>();
+            for (Object constant : fieldType.getEnumConstants()) {
+                enumConstants.put(((Enum) constant).name(), constant);
+            }
         }
 
         this.field = field;
@@ -81,20 +110,72 @@ class ColumnMetaData {
         return autoincrement;
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
     public void set(Cursor c, Object o) {
+        set(c, o, index);
+    }
+
+    /**
+     * sets field from a cursor column
+     *
+     * @param c     cursor positioned on a row
+     * @param o     object to fill
+     * @param index index of this column in the cursor
+     */
+    public void set(Cursor c, Object o, int index) {
         try {
-            switch (type) {
-                case INTEGER:
-                    field.setLong(o, c.getLong(index));
+            if (nullable && c.isNull(index)) {
+                setValue(o, null);
+                return;
+            }
+            switch (kind) {
+                case LONG:
+                    if (nullable) setValue(o, c.getLong(index));
+                    else field.setLong(o, c.getLong(index));
+                    break;
+                case INT:
+                    if (nullable) setValue(o, c.getInt(index));
+                    else field.setInt(o, c.getInt(index));
+                    break;
+                case SHORT:
+                    if (nullable) setValue(o, c.getShort(index));
+                    else field.setShort(o, c.getShort(index));
+                    break;
+                case BYTE:
+                    if (nullable) setValue(o, (byte) c.getInt(index));
+                    else field.setByte(o, (byte) c.getInt(index));
+                    break;
+                case BOOLEAN:
+                    if (nullable) setValue(o, c.getInt(index) != 0);
+                    else field.setBoolean(o, c.getInt(index) != 0);
+                    break;
+                case DOUBLE:
+                    if (nullable) setValue(o, c.getDouble(index));
+                    else field.setDouble(o, c.getDouble(index));
                     break;
                 case FLOAT:
-                    field.setDouble(o, c.getDouble(index));
+                    if (nullable) setValue(o, c.getFloat(index));
+                    else field.setFloat(o, c.getFloat(index));
                     break;
                 case STRING:
-                    field.set(o, c.getString(index));
+                    setValue(o, c.getString(index));
+                    break;
+                case DATE:
+                    setValue(o, new Date(c.getLong(index)));
+                    break;
+                case ENUM:
+                    setValue(o, enumConstants.get(c.getString(index)));
+                    break;
+                case BYTES:
+                    setValue(o, c.getBlob(index));
                     break;
-                case BLOB:
-                    throw new UnsupportedOperationException("blobs are not implemented yet");
             }
         } catch (IllegalAccessException e) {
             throw new UnsupportedOperationException("illegal acces should not be happening");
@@ -103,40 +184,299 @@ class ColumnMetaData {
 
     public void get(ContentValues values, Object o) {
         try {
-            switch (type) {
-                case INTEGER:
-                    values.put(name, (Long) field.get(o));
+            if (nullable && value(o) == null) {
+                values.putNull(name);
+                return;
+            }
+            switch (kind) {
+                case LONG:
+                case INT:
+                case SHORT:
+                case BYTE:
+                case BOOLEAN:
+                case DATE:
+                    values.put(name, getLong(o));
                     break;
+                case DOUBLE:
                 case FLOAT:
-                    values.put(name, (Double) field.get(o));
+                    values.put(name, getDouble(o));
                     break;
                 case STRING:
-                    values.put(name, (String) field.get(o));
+                case ENUM:
+                    values.put(name, toArg(o));
+                    break;
+                case BYTES:
+                    values.put(name, (byte[]) value(o));
                     break;
-                case BLOB:
-                    throw new UnsupportedOperationException("blobs are not implemented yet");
             }
         } catch (IllegalAccessException e) {
             throw new UnsupportedOperationException("illegal acces should not be happening");
         }
     }
 
-    public boolean isSet(Object o) {
+    /**
+     * binds value of this column directly to a compiled statement
+     * avoids going through ContentValues and boxing primitives
+     *
+     * @param statement compiled statement
+     * @param position  1-based index of bind argument
+     * @param o         object to read value from
+     */
+    public void bind(SQLiteStatement statement, int position, Object o) {
         try {
+            if (nullable && value(o) == null) {
+                statement.bindNull(position);
+                return;
+            }
             switch (type) {
                 case INTEGER:
-                    return (Long) field.get(o) != 0;
+                    statement.bindLong(position, getLong(o));
+                    break;
                 case FLOAT:
-                    return (Double) field.get(o) != 0;
+                    statement.bindDouble(position, getDouble(o));
+                    break;
                 case STRING:
-                    String s = (String) field.get(o);
-                    return !(s == null || s.equals(""));
+                    statement.bindString(position, toArg(o));
+                    break;
                 case BLOB:
-                    throw new UnsupportedOperationException("blobs are not implemented yet");
+                    statement.bindBlob(position, (byte[]) value(o));
+                    break;
             }
         } catch (IllegalAccessException e) {
             throw new UnsupportedOperationException("illegal acces should not be happening");
         }
-        return false;
+    }
+
+    /**
+     * reads value of an integer column without boxing primitives
+     * null is read as 0
+     *
+     * @param o object to read value from
+     * @return value as stored in the database
+     */
+    public long getLong(Object o) {
+        try {
+            if (nullable) {
+                Object value = value(o);
+                if (value == null) {
+                    return 0;
+                }
+                if (kind == Kind.BOOLEAN) {
+                    return (Boolean) value ? 1 : 0;
+                }
+                if (kind == Kind.DATE) {
+                    return ((Date) value).getTime();
+                }
+                if (type == Type.INTEGER) {
+                    return ((Number) value).longValue();
+                }
+            } else {
+                switch (kind) {
+                    case LONG:
+                        return field.getLong(o);
+                    case INT:
+                        return field.getInt(o);
+                    case SHORT:
+                        return field.getShort(o);
+                    case BYTE:
+                        return field.getByte(o);
+                    case BOOLEAN:
+                        return field.getBoolean(o) ? 1 : 0;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+        throw new UnsupportedOperationException("column " + name + " is not an integer");
+    }
+
+    /**
+     * reads value of a real column without boxing primitives
+     * null is read as 0
+     *
+     * @param o object to read value from
+     * @return value as stored in the database
+     */
+    public double getDouble(Object o) {
+        try {
+            if (nullable) {
+                Object value = value(o);
+                if (type == Type.FLOAT) {
+                    return value == null ? 0 : ((Number) value).doubleValue();
+                }
+            } else if (kind == Kind.DOUBLE) {
+                return field.getDouble(o);
+            } else if (kind == Kind.FLOAT) {
+                return field.getFloat(o);
+            }
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+        throw new UnsupportedOperationException("column " + name + " is not a real");
+    }
+
+    /**
+     * reads value as a string usable as selection argument
+     *
+     * @param o object to read value from
+     * @return value as string, null for null
+     */
+    public String toArg(Object o) {
+        try {
+            if (nullable && value(o) == null) {
+                return null;
+            }
+            switch (kind) {
+                case STRING:
+                    return (String) value(o);
+                case ENUM:
+                    return ((Enum) value(o)).name();
+                case BYTES:
+                    throw new UnsupportedOperationException("blobs can't be used as arguments");
+            }
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+        return type == Type.INTEGER ? Long.toString(getLong(o)) : Double.toString(getDouble(o));
+    }
+
+    /**
+     * converts a value of this column's field to a selection argument the way it would be stored
+     * values that already have the stored form (e.g. a Long for a Date column) are used as they are
+     *
+     * @param value field value
+     * @return String, Long, Double or byte[] to bind, see StatementCache.bindValue
+     */
+    @SuppressWarnings("unchecked") //converter is for this field
+    public Object valueToArg(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null can't be bound, use isNull");
+        }
+        if (converter != null && field.getType().isInstance(value)) {
+            value = converter.toStorage(value);
+        }
+        if (value instanceof byte[]) {
+            return value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Enum) {
+            return ((Enum) value).name();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value.toString();
+    }
+
+    /**
+     * compares values of this column in two objects as they would be stored
+     *
+     * @return true if both objects have the same value
+     */
+    public boolean valueEquals(Object a, Object b) {
+        try {
+            if (nullable) {
+                Object va = value(a);
+                Object vb = value(b);
+                if (va == null || vb == null) {
+                    return va == vb;
+                }
+                if (kind == Kind.BYTES) {
+                    return Arrays.equals((byte[]) va, (byte[]) vb);
+                }
+                return va.equals(vb);
+            }
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+        return type == Type.INTEGER ? getLong(a) == getLong(b)
+                : Double.doubleToLongBits(getDouble(a)) == Double.doubleToLongBits(getDouble(b));
+    }
+
+    public boolean isSet(Object o) {
+        try {
+            if (nullable) {
+                Object value = value(o);
+                if (value == null) {
+                    return false;
+                }
+                switch (kind) {
+                    case STRING:
+                        return ((String) value).length() > 0;
+                    case BYTES:
+                        return ((byte[]) value).length > 0;
+                    case BOOLEAN:
+                    case DATE:
+                    case ENUM:
+                        return true;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+        return type == Type.INTEGER ? getLong(o) != 0 : getDouble(o) != 0;
+    }
+
+    /**
+     * @return value of the field as stored in database, converted if column has a converter
+     */
+    @SuppressWarnings("unchecked") //converter is for this field
+    private Object value(Object o) throws IllegalAccessException {
+        Object value = field.get(o);
+        return converter == null ? value : converter.toStorage(value);
+    }
+
+    /**
+     * sets the field from a stored value, converted if column has a converter
+     */
+    @SuppressWarnings("unchecked") //converter is for this field
+    private void setValue(Object o, Object value) throws IllegalAccessException {
+        field.set(o, converter == null ? value : converter.fromStorage(value));
+    }
+
+    /**
+     * java side representation of a column
+     */
+    private enum Kind {
+        LONG(Type.INTEGER),
+        INT(Type.INTEGER),
+        SHORT(Type.INTEGER),
+        BYTE(Type.INTEGER),
+        BOOLEAN(Type.INTEGER),
+        DATE(Type.INTEGER),
+        DOUBLE(Type.FLOAT),
+        FLOAT(Type.FLOAT),
+        STRING(Type.STRING),
+        ENUM(Type.STRING),
+        BYTES(Type.BLOB);
+
+        final Type type;
+
+        Kind(Type type) {
+            this.type = type;
+        }
+
+        static Kind of(Class c) {
+            if (c == long.class || c == Long.class) return LONG;
+            if (c == int.class || c == Integer.class) return INT;
+            if (c == short.class || c == Short.class) return SHORT;
+            if (c == byte.class || c == Byte.class) return BYTE;
+            if (c == boolean.class || c == Boolean.class) return BOOLEAN;
+            if (c == double.class || c == Double.class) return DOUBLE;
+            if (c == float.class || c == Float.class) return FLOAT;
+            if (c == String.class) return STRING;
+            if (c == byte[].class) return BYTES;
+            if (c == Date.class) return DATE;
+            if (c.isEnum()) return ENUM;
+            return null;
+        }
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Connection tuning read from Table or Database.Options annotation.
+ * Zero or empty values leave the sqlite defaults.
+ */
+class ConnectionOptions {
+    static final ConnectionOptions DEFAULT = new ConnectionOptions(false, "", 0, 0);
+
+    final boolean writeAheadLogging;
+    final String synchronous;
+    final int cacheSize;
+    final int readConnections;
+
+    ConnectionOptions(boolean writeAheadLogging, String synchronous, int cacheSize, int readConnections) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.readConnections = readConnections;
+    }
+
+    static ConnectionOptions of(Table table) {
+        return new ConnectionOptions(table.writeAheadLogging(), table.synchronous(), table.cacheSize(),
+                table.readConnections());
+    }
+
+    static ConnectionOptions of(Database.Options options) {
+        if (options == null) {
+            return DEFAULT;
+        }
+        return new ConnectionOptions(options.writeAheadLogging(), options.synchronous(), options.cacheSize(),
+                options.readConnections());
+    }
+}
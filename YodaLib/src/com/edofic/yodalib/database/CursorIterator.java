@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy result of a query. Rows are mapped one at a time as you iterate.
+ * Cursor is closed automatically after the last row, if you stop early call close().
+ * Can only be iterated once.
+ * When created with reuse the same instance of T is filled and returned for every row,
+ * so don't keep references to returned objects in that mode.
+ * Iterators of an instrumented datasource report their timings when closed,
+ * time spent between calls to next is not counted.
+ */
+public class CursorIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private final Cursor cursor;
+    private final TableMetaData metaData;
+    private final Projection projection;
+    private final T instance;
+    private final Datasource<?> metrics;
+    private final String sql;
+    private final Object[] selectionArgs;
+    private long queryNanos;
+    private long mappingNanos;
+    private int rows;
+    private boolean hasNext;
+
+    CursorIterator(Cursor cursor, TableMetaData metaData, boolean reuse) {
+        this(cursor, metaData, reuse, null, null, null, 0);
+    }
+
+    /**
+     * @param metrics datasource to record timings with on close, null if not instrumented
+     * @param start   System.nanoTime() before the query was run
+     */
+    @SuppressWarnings("unchecked") //metadata constructs instances of T
+    CursorIterator(Cursor cursor, TableMetaData metaData, boolean reuse, Datasource<?> metrics, String sql,
+                   Object[] selectionArgs, long start) {
+        this.cursor = cursor;
+        this.metaData = metaData;
+        this.metrics = metrics;
+        this.sql = sql;
+        this.selectionArgs = selectionArgs;
+        this.projection = Projection.resolve(metaData, cursor);
+        this.instance = reuse ? (T) metaData.newInstance() : null;
+        hasNext = cursor.moveToFirst();
+        if (metrics != null) {
+            queryNanos = System.nanoTime() - start;
+        }
+        if (!hasNext) {
+            close();
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked") //metadata constructs instances of T
+    public T next() {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        long mappingStart = metrics != null ? System.nanoTime() : 0;
+        T t;
+        if (instance != null) {
+            metaData.fill(cursor, instance, projection);
+            t = instance;
+        } else {
+            t = (T) metaData.cursorToObject(cursor, projection);
+        }
+        rows++;
+        if (metrics != null) {
+            long moveStart = System.nanoTime();
+            mappingNanos += moveStart - mappingStart;
+            hasNext = cursor.moveToNext();
+            queryNanos += System.nanoTime() - moveStart;
+        } else {
+            hasNext = cursor.moveToNext();
+        }
+        if (!hasNext) {
+            close();
+        }
+        return t;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("cursor results are read only");
+    }
+
+    /**
+     * closes underlying cursor, safe to call multiple times
+     */
+    @Override
+    public void close() {
+        hasNext = false;
+        if (!cursor.isClosed()) {
+            cursor.close();
+            if (metrics != null) {
+                metrics.recordQuery(null, sql, selectionArgs, rows, queryNanos, mappingNanos);
+            }
+        }
+    }
+}
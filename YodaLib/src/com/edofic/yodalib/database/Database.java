@@ -48,6 +48,22 @@ public abstract class Database implements Proxy {
         public Class injectForType();
     }
 
+    /**
+     * connection tuning for the whole database, put it on your database class
+     * see Table for meaning of values
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Options {
+        public boolean writeAheadLogging() default false;
+
+        public String synchronous() default "";
+
+        public int cacheSize() default 0;
+
+        public int readConnections() default 0;
+    }
+
     private Context mContext;
     private DatabaseOpenHelper helper;
     private String mName;
@@ -57,7 +73,6 @@ public abstract class Database implements Proxy {
         this.mContext = context;
         this.mName = name;
         this.mVersion = version;
-
         init();
     }
 
@@ -71,6 +86,58 @@ public abstract class Database implements Proxy {
         return helper.getWritableDatabase();
     }
 
+    @Override
+    public SQLiteDatabase acquireReadableDatabase() {
+        return helper.acquireReader();
+    }
+
+    @Override
+    public void releaseReadableDatabase(SQLiteDatabase db) {
+        helper.releaseReader(db);
+    }
+
+    /**
+     * closes all connections of this database
+     */
+    public void close() {
+        helper.close();
+    }
+
+    /**
+     * builds meta data of all tables of a database class on a background thread
+     * call it early (e.g. Application.onCreate) so constructing the database later is cheap.
+     * the constructor doesn't start one itself: it would wait for tables the low priority
+     * thread is still building instead of building them on its own thread
+     *
+     * @param database your database class
+     * @return started thread, join it if you need to wait
+     */
+    public static Thread preload(Class<? extends Database> database) {
+        List<Class> classes = tableClasses(database);
+        return MetaDataFactory.warmupInBackground(classes.toArray(new Class[classes.size()]));
+    }
+
+    private static List<Class> tableClasses(Class<? extends Database> database) {
+        List<Class> classes = new ArrayList<Class>();
+        for (Field field : database.getDeclaredFields()) {
+            TableDatasource t = field.getAnnotation(TableDatasource.class);
+            if (t != null) {
+                classes.add(t.injectForType());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * migration steps applied when upgrading the database, see Migration
+     * this is called from the constructor so don't depend on fields of your subclass
+     *
+     * @return migration steps in any order
+     */
+    protected Migration[] getMigrations() {
+        return new Migration[0];
+    }
+
     private void init() {
         List<TableMetaData> metaDataList = new ArrayList<TableMetaData>();
         Map<Field, Class> fields = new HashMap<Field, Class>();
@@ -90,7 +157,8 @@ public abstract class Database implements Proxy {
         }
 
         TableMetaData[] meta = metaDataList.toArray(new TableMetaData[metaDataList.size()]);
-        helper = new DatabaseOpenHelper(mContext, meta, mName, mVersion);
+        ConnectionOptions options = ConnectionOptions.of(getClass().getAnnotation(Options.class));
+        helper = new DatabaseOpenHelper(mContext, meta, mName, mVersion, options, getMigrations());
 
         //injection magic
         for (Field field : fields.keySet()) {
@@ -16,11 +16,16 @@
 package com.edofic.yodalib.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 
 /**
  * User: andraz
@@ -29,19 +34,71 @@ import java.util.ArrayList;
  */
 class DatabaseOpenHelper extends SQLiteOpenHelper {
     private final TableMetaData[] metaData;
-    private String[] create;
+    private final Context context;
+    private final String name;
+    private final ConnectionOptions options;
+    private final Migration[] migrations;
+    private String[] createTables;
+    private ArrayList<String> createIndices;
+    private volatile ReaderPool readers;
 
     public DatabaseOpenHelper(Context context, TableMetaData[] meta, String name, int version) {
+        this(context, meta, name, version, ConnectionOptions.DEFAULT, new Migration[0]);
+    }
+
+    public DatabaseOpenHelper(Context context, TableMetaData[] meta, String name, int version,
+                              ConnectionOptions options, Migration[] migrations) {
         super(context, name, null, version);
         metaData = meta;
         if (meta == null) {
             throw new IllegalArgumentException("You must provide meta data in order to create a db");
         }
+        this.context = context;
+        this.name = name;
+        this.options = options;
+        this.migrations = migrations.clone();
+        Arrays.sort(this.migrations, new Comparator<Migration>() {
+            @Override
+            public int compare(Migration m1, Migration m2) {
+                return m1.getVersion() < m2.getVersion() ? -1 : (m1.getVersion() == m2.getVersion() ? 0 : 1);
+            }
+        });
         buildScripts();
     }
 
+    /**
+     * gets a read only pooled connection if write ahead logging is active and read connections
+     * are configured, writable connection otherwise or when all pooled connections are in use
+     *
+     * @return connection to read from, give it back with releaseReader
+     */
+    public SQLiteDatabase acquireReader() {
+        SQLiteDatabase writable = getWritableDatabase();
+        ReaderPool pool = readers;
+        SQLiteDatabase reader = pool == null ? null : pool.acquire();
+        return reader == null ? writable : reader;
+    }
+
+    public void releaseReader(SQLiteDatabase db) {
+        ReaderPool pool = readers;
+        if (pool != null && pool.owns(db)) {
+            pool.release(db);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        ReaderPool pool = readers;
+        readers = null;
+        if (pool != null) {
+            pool.close();
+        }
+        super.close();
+    }
+
     private void buildScripts() {
-        create = new String[metaData.length];
+        createTables = new String[metaData.length];
+        createIndices = new ArrayList<String>();
         for (int index = 0; index < metaData.length; index++) {
             TableMetaData tableMetaData = metaData[index];
 
@@ -67,25 +124,153 @@ class DatabaseOpenHelper extends SQLiteOpenHelper {
                 sb.append(" ");
             }
             sb.append(");");
-            create[index] = sb.toString();
+            createTables[index] = sb.toString();
+
+            for (IndexMetaData indexMetaData : tableMetaData.getIndices()) {
+                createIndices.add(indexMetaData.getCreateSql());
+            }
+        }
+    }
+
+    /**
+     * creates full text shadow table and its triggers
+     *
+     * @param populate copy rows already in the table
+     */
+    private static void createFullText(SQLiteDatabase db, FullTextMetaData fullText, boolean populate) {
+        db.execSQL(fullText.getCreateSql());
+        if (populate) {
+            db.execSQL(fullText.getPopulateSql());
+        }
+        for (String s : fullText.getTriggerSql()) {
+            db.execSQL(s);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (db.isReadOnly()) {
+            return;
+        }
+        boolean wal = false;
+        if (options.writeAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            //through the framework so its connection handling knows, false if wal isn't possible (in memory)
+            wal = db.enableWriteAheadLogging();
+        }
+        if (options.synchronous.length() > 0) {
+            db.execSQL("PRAGMA synchronous = " + options.synchronous);
+        }
+        if (options.cacheSize != 0) {
+            db.execSQL("PRAGMA cache_size = " + options.cacheSize);
+        }
+        if (wal && options.readConnections > 0 && readers == null) {
+            readers = new ReaderPool(context.getDatabasePath(name).getPath(),
+                    options.readConnections, options.cacheSize);
         }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        for (String s : create) {
+        for (String s : createTables) {
             db.execSQL(s);
         }
+        for (String s : createIndices) {
+            db.execSQL(s);
+        }
+        for (TableMetaData tableMetaData : metaData) {
+            if (tableMetaData.getFullText() != null) {
+                createFullText(db, tableMetaData.getFullText(), false);
+            }
+        }
     }
 
+    /**
+     * upgrades schema in place by comparing stored schema to meta data
+     * creates missing tables, adds missing columns, runs migrations and creates missing indices
+     * columns no longer in meta data are left alone. tables that miss a primary key column
+     * can't be altered and are recreated, which destroys their data
+     * full text tables are rebuilt from their table when their columns changed, triggers are always recreated
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(DatabaseOpenHelper.class.getName(),
-                "Upgrading database from version " + oldVersion + " to "
-                        + newVersion + ", which will destroy all old data");
-        for (TableMetaData tableMetaData : metaData) {
-            db.execSQL("DROP TABLE IF EXISTS " + tableMetaData.getTableName());
+        Log.i(DatabaseOpenHelper.class.getName(),
+                "Upgrading database from version " + oldVersion + " to " + newVersion);
+        boolean[] created = new boolean[metaData.length];
+        for (int i = 0; i < metaData.length; i++) {
+            TableMetaData tableMetaData = metaData[i];
+            HashSet<String> existing = storedColumns(db, tableMetaData.getTableName());
+            if (existing.isEmpty()) {
+                db.execSQL(createTables[i]);
+                created[i] = true;
+                continue;
+            }
+
+            ArrayList<ColumnMetaData> missing = new ArrayList<ColumnMetaData>();
+            boolean recreate = false;
+            for (ColumnMetaData column : tableMetaData.getColumns()) {
+                if (!existing.contains(column.getName())) {
+                    missing.add(column);
+                    recreate = recreate || column.isPrimary();
+                }
+            }
+            if (recreate) {
+                Log.w(DatabaseOpenHelper.class.getName(), "Primary key of " + tableMetaData.getTableName()
+                        + " changed, recreating table which will destroy all old data");
+                db.execSQL("DROP TABLE IF EXISTS " + tableMetaData.getTableName());
+                db.execSQL(createTables[i]);
+                created[i] = true;
+                continue;
+            }
+            for (ColumnMetaData column : missing) {
+                db.execSQL("alter table " + tableMetaData.getTableName() + " add column "
+                        + column.getName() + " " + column.getType().getText());
+            }
+        }
+
+        for (Migration migration : migrations) {
+            if (migration.getVersion() > oldVersion && migration.getVersion() <= newVersion) {
+                migration.migrate(db);
+            }
+        }
+
+        for (String s : createIndices) {
+            db.execSQL(s);
+        }
+
+        for (int i = 0; i < metaData.length; i++) {
+            FullTextMetaData fullText = metaData[i].getFullText();
+            if (fullText == null) {
+                continue;
+            }
+            for (String trigger : fullText.getTriggerNames()) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            HashSet<String> stored = storedColumns(db, fullText.getTableName());
+            if (!created[i] && stored.equals(new HashSet<String>(Arrays.asList(fullText.getColumns())))) {
+                for (String s : fullText.getTriggerSql()) {
+                    db.execSQL(s);
+                }
+            } else {
+                db.execSQL("DROP TABLE IF EXISTS " + fullText.getTableName());
+                createFullText(db, fullText, !created[i]);
+            }
+        }
+    }
+
+    /**
+     * @return names of columns of a table as stored in the database, empty if table doesn't exist
+     */
+    private static HashSet<String> storedColumns(SQLiteDatabase db, String table) {
+        HashSet<String> names = new HashSet<String>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(nameIndex));
+            }
+        } finally {
+            cursor.close();
         }
-        onCreate(db);
+        return names;
     }
 }
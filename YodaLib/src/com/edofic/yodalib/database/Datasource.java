@@ -18,10 +18,31 @@ package com.edofic.yodalib.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * User: andraz
@@ -32,9 +53,40 @@ import java.util.List;
  * Connection is made when object is created and closed with close()
  */
 public class Datasource<T> {
+    /**
+     * number of compiled statements kept per datasource
+     */
+    public static final int STATEMENT_CACHE_SIZE = 16;
+    /**
+     * number of built query shapes kept per datasource
+     */
+    public static final int QUERY_SHAPE_CACHE_SIZE = 64;
+    private static final String CHANGES_SQL = "select changes()";
+    /**
+     * maximum number of bind arguments sqlite accepts in one statement
+     */
+    static final int MAX_BIND_ARGS = 999;
+    /**
+     * returned by insert for rows queued by write behind, they don't have an id yet
+     */
+    public static final long QUEUED = -2;
+    /**
+     * rows per transaction of importFrom
+     */
+    private static final int IMPORT_CHUNK = 1000;
 
     public static <T2> Datasource<T2> create(Context context, Class<T2> c) {
-        return new Datasource<T2>(context, c);
+        return new Datasource<T2>(context, c, new Migration[0]);
+    }
+
+    /**
+     * creates a single table datasource with migration steps for its own database,
+     * single table databases have no Database subclass to override getMigrations() in
+     *
+     * @param migrations applied when upgrading to the version from the Table annotation, see Migration
+     */
+    public static <T2> Datasource<T2> create(Context context, Class<T2> c, Migration... migrations) {
+        return new Datasource<T2>(context, c, migrations);
     }
 
     public static <T2> Datasource<T2> create(Proxy proxy, Class c) {
@@ -46,16 +98,31 @@ public class Datasource<T> {
     private final Proxy proxy;
     private final Class c;
     private final TableMetaData metaData;
+    //writes lock the connection first by beginning a transaction and only then take statements,
+    //the same order as a caller writing inside its own transaction
+    private final StatementCache statements = new StatementCache(STATEMENT_CACHE_SIZE);
+    private final Map<String, String> queryShapes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > QUERY_SHAPE_CACHE_SIZE;
+        }
+    };
+    private volatile IdentityCache<T> cache;
+    private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+    private final CopyOnWriteArrayList<MetricsListener> metricsListeners = new CopyOnWriteArrayList<MetricsListener>();
+    private volatile long slowQueryNanos = -1;
+    private volatile WriteBehindBuffer<T> writeBehind;
 
     /**
      * creates new datasource (one table/db)
      * and opens it
      *
-     * @param context context
-     * @param c       must be equal to T, limitation because of type erasure
+     * @param context    context
+     * @param c          must be equal to T, limitation because of type erasure
+     * @param migrations upgrade steps for the table's database
      */
-    private Datasource(Context context, Class c) {
-        this(new SingleTableProxy(context, c), c);
+    private Datasource(Context context, Class c, Migration[] migrations) {
+        this(new SingleTableProxy(context, c, migrations), c);
     }
 
     /**
@@ -83,6 +150,169 @@ public class Datasource<T> {
         return c;
     }
 
+    /**
+     * enables identity map of loaded objects used by getById
+     * cached objects are shared, so don't modify them without inserting back
+     * table must have an integer primary key
+     *
+     * @param maxSize maximum number of cached objects, least recently used are evicted
+     */
+    public void enableCache(int maxSize) {
+        ColumnMetaData primaryKey = metaData.getPrimaryKey();
+        if (primaryKey == null || primaryKey.getType() != Type.INTEGER) {
+            throw new IllegalStateException("caching requires an integer primary key");
+        }
+        cache = new IdentityCache<T>(maxSize);
+    }
+
+    /**
+     * disables and drops identity map
+     */
+    public void disableCache() {
+        cache = null;
+    }
+
+    /**
+     * @return number of getById calls served from cache, 0 if cache is disabled
+     */
+    public long getCacheHits() {
+        IdentityCache<T> cache = this.cache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * @return number of getById calls that went to the database, 0 if cache is disabled
+     */
+    public long getCacheMisses() {
+        IdentityCache<T> cache = this.cache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * registers listener notified after every write through this datasource
+     *
+     * @param listener listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyChange(ChangeListener.Operation operation, long[] ids) {
+        for (ChangeListener listener : listeners) {
+            listener.onChange(this, operation, ids);
+        }
+    }
+
+    /**
+     * registers listener notified with timings of every query and write, see QueryMetrics
+     *
+     * @param listener listener to add
+     */
+    public void addMetricsListener(MetricsListener listener) {
+        metricsListeners.addIfAbsent(listener);
+    }
+
+    public void removeMetricsListener(MetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * logs queries and writes slower than threshold together with their query plan
+     *
+     * @param millis threshold in milliseconds, negative disables logging
+     */
+    public void setSlowQueryThreshold(long millis) {
+        slowQueryNanos = millis < 0 ? -1 : millis * 1000000;
+    }
+
+    private boolean instrumented() {
+        return slowQueryNanos >= 0 || !metricsListeners.isEmpty();
+    }
+
+    /**
+     * @param database connection to explain slow queries on, null uses a read connection
+     */
+    void recordQuery(SQLiteDatabase database, String sql, Object[] selectionArgs, int rows,
+                     long queryNanos, long mappingNanos) {
+        for (MetricsListener listener : metricsListeners) {
+            listener.onQuery(this, sql, rows, queryNanos, mappingNanos);
+        }
+        long threshold = slowQueryNanos;
+        if (threshold >= 0 && queryNanos + mappingNanos >= threshold) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("slow query on ").append(metaData.getTableName());
+            sb.append(": ").append((queryNanos + mappingNanos) / 1000000).append("ms, ");
+            sb.append(mappingNanos / 1000000).append("ms mapping, ").append(rows).append(" rows\n");
+            sb.append(sql);
+            SQLiteDatabase explain = database != null ? database : proxy.acquireReadableDatabase();
+            try {
+                Cursor plan = TypedQuery.rawQuery(explain, "explain query plan " + sql, selectionArgs);
+                int detail = plan.getColumnIndex("detail");
+                while (plan.moveToNext()) {
+                    sb.append("\n    ").append(plan.getString(detail));
+                }
+                plan.close();
+            } catch (SQLException e) {
+                sb.append("\n    no query plan: ").append(e.getMessage());
+            } finally {
+                if (database == null) {
+                    proxy.releaseReadableDatabase(explain);
+                }
+            }
+            Log.w(Datasource.class.getName(), sb.toString());
+        }
+    }
+
+    /**
+     * queues new rows passed to insert and writes them in batches on a background thread
+     * insert returns QUEUED for queued rows and reads don't see them until they are written,
+     * call flush when they have to. updates through insert write pending rows first
+     *
+     * rows that can't be written are logged and dropped
+     *
+     * @param batchSize      rows per transaction, up to 4 batches are queued before insert writes them itself
+     * @param maxDelayMillis longest time a row waits in the queue
+     */
+    public void enableWriteBehind(int batchSize, long maxDelayMillis) {
+        enableWriteBehind(batchSize, maxDelayMillis, null);
+    }
+
+    /**
+     * same as enableWriteBehind(batchSize, maxDelayMillis)
+     *
+     * @param listener notified about each row that can't be written, null logs them
+     */
+    public void enableWriteBehind(int batchSize, long maxDelayMillis, WriteBehindListener<T> listener) {
+        WriteBehindBuffer<T> buffer = new WriteBehindBuffer<T>(this, batchSize, maxDelayMillis, listener);
+        disableWriteBehind();
+        writeBehind = buffer;
+    }
+
+    /**
+     * writes queued rows and returns to writing on insert
+     */
+    public void disableWriteBehind() {
+        WriteBehindBuffer<T> buffer = writeBehind;
+        writeBehind = null;
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    /**
+     * writes rows queued by write behind on the calling thread, no-op when it is disabled
+     *
+     * @return number of rows written
+     */
+    public int flush() {
+        WriteBehindBuffer<T> buffer = writeBehind;
+        return buffer == null ? 0 : buffer.flush();
+    }
+
     /**
      * gets writable database
      */
@@ -92,9 +322,16 @@ public class Datasource<T> {
 
     /**
      * closes database connection, renders the datasource useless
+     * rows queued by write behind are written first
      */
     public void close() {
-        db.close();
+        disableWriteBehind();
+        statements.clear();
+        if (proxy instanceof SingleTableProxy) {
+            ((SingleTableProxy) proxy).close();
+        } else {
+            db.close();
+        }
         db = null;
     }
 
@@ -104,62 +341,419 @@ public class Datasource<T> {
      * *YOU HAVE TO MANUALLY OPEN AND CLOSE THE DB*
      *
      * @param t object to insert
-     * @return new id if insertion or numbers of row affected if update
+     * @return new id if insertion or numbers of row affected if update (0 if the table has only
+     *         autoincrement columns), -1 on error, QUEUED if write behind queued the row
      */
     public long insert(T t) {
-        ContentValues values = new ContentValues();
-        for (ColumnMetaData column : metaData.getColumnsNoIncrement()) {
-            column.get(values, t);
-        }
-
         boolean update = false;
-        StringBuilder whereClause = new StringBuilder();
         for (ColumnMetaData column : metaData.getColumnsAutoincrement()) {
             if (column.isSet(t)) {
-                column.get(values, t);
-                final String name = column.getName();
-                if (update) {
-                    whereClause.append(", ");
-                }
-                whereClause.append(name);
-                whereClause.append(" = ");
-                whereClause.append(values.get(name).toString());
                 update = true;
+                break;
+            }
+        }
+
+        WriteBehindBuffer<T> buffer = writeBehind;
+        if (buffer != null) {
+            if (!update) {
+                if (buffer.add(t)) {
+                    return QUEUED;
+                }
+                //write behind was disabled meanwhile, insert directly
+            } else {
+                buffer.flush();
+            }
+        }
+        if (update && metaData.getUpdateSql() == null) {
+            //only autoincrement columns, there is nothing to set
+            return 0;
+        }
+
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            cache.remove(metaData.getPrimaryKey().getLong(t));
+        }
+
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long result;
+        try {
+            db.beginTransaction();
+            try {
+                synchronized (statements) {
+                    if (!update) {
+                        SQLiteStatement statement = statements.get(db, metaData.getInsertSql());
+                        metaData.bindInsert(statement, t);
+                        result = statement.executeInsert();
+                    } else {
+                        SQLiteStatement statement = statements.get(db, metaData.getUpdateSql());
+                        metaData.bindUpdate(statement, t);
+                        statement.execute();
+                        result = statements.get(db, CHANGES_SQL).simpleQueryForLong();
+                    }
+                }
+            } finally {
+                //a failed statement is already rolled back, don't fail an enclosing transaction
+                db.setTransactionSuccessful();
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            Log.e(Datasource.class.getName(), "Error inserting into " + metaData.getTableName(), e);
+            return -1;
+        }
+        if (instrumented) {
+            recordQuery(db, update ? metaData.getUpdateSql() : metaData.getInsertSql(), null,
+                    update ? (int) result : 1, System.nanoTime() - start, 0);
+        }
+
+        if (!listeners.isEmpty()) {
+            if (!update) {
+                notifyChange(ChangeListener.Operation.INSERT, new long[]{result});
+            } else {
+                ColumnMetaData key = metaData.getColumnsAutoincrement().get(0);
+                long[] ids = key.getType() == Type.INTEGER ? new long[]{key.getLong(t)} : null;
+                notifyChange(ChangeListener.Operation.UPDATE, ids);
             }
         }
+        return result;
+    }
 
+    /**
+     * inserts all entries in a single transaction
+     * autoincrement columns are ignored so this never performs updates
+     *
+     * @param items objects to insert
+     * @return new ids in iteration order
+     * @throws SQLException if any row fails, the whole batch is rolled back and nothing is inserted
+     */
+    public long[] insertAll(Collection<T> items) {
+        return insertAll(items, items.size(), false);
+    }
+
+    /**
+     * inserts all entries in a single transaction
+     * autoincrement columns are ignored so this never performs updates
+     *
+     * @param items objects to insert
+     * @return new ids in iteration order
+     * @throws SQLException if any row fails, the whole batch is rolled back and nothing is inserted
+     */
+    public long[] insertAll(Iterable<T> items) {
+        return insertAll(items, 16, false);
+    }
+
+    /**
+     * inserts new entry or replaces the existing one with the same primary key
+     * unset autoincrement columns are assigned by the database
+     *
+     * @param t object to insert or replace
+     * @return row id of inserted or replaced row, -1 on error
+     */
+    public long upsert(T t) {
+        String sql = upsertSql();
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
         long id;
-        if (!update) {
-            id = db.insert(metaData.getTableName(), null, values);
-        } else {
-            id = db.update(metaData.getTableName(), values,
-                    whereClause.toString(), null);
+        try {
+            db.beginTransaction();
+            try {
+                synchronized (statements) {
+                    SQLiteStatement statement = statements.get(db, sql);
+                    metaData.bindUpsert(statement, t);
+                    id = statement.executeInsert();
+                }
+            } finally {
+                //a failed statement is already rolled back, don't fail an enclosing transaction
+                db.setTransactionSuccessful();
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            Log.e(Datasource.class.getName(), "Error upserting into " + metaData.getTableName(), e);
+            return -1;
+        }
+        if (instrumented) {
+            recordQuery(db, sql, null, 1, System.nanoTime() - start, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            cache.remove(id);
+        }
+        if (!listeners.isEmpty()) {
+            notifyChange(ChangeListener.Operation.UPDATE, new long[]{id});
         }
         return id;
     }
 
+    /**
+     * inserts or replaces all entries in a single transaction, see upsert
+     *
+     * @param items objects to insert or replace
+     * @return row ids in iteration order
+     */
+    public long[] upsertAll(Collection<T> items) {
+        return insertAll(items, items.size(), true);
+    }
+
+    /**
+     * inserts or replaces all entries in a single transaction, see upsert
+     *
+     * @param items objects to insert or replace
+     * @return row ids in iteration order
+     */
+    public long[] upsertAll(Iterable<T> items) {
+        return insertAll(items, 16, true);
+    }
+
+    private String upsertSql() {
+        if (metaData.getPrimaryKey() == null) {
+            throw new IllegalStateException("upsert requires a primary key on " + metaData.getTableName());
+        }
+        return metaData.getUpsertSql();
+    }
+
+    private long[] insertAll(Iterable<T> items, int capacity, boolean upsert) {
+        String sql = upsert ? upsertSql() : metaData.getInsertSql();
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long[] ids = new long[capacity];
+        int count = 0;
+        db.beginTransaction();
+        try {
+            synchronized (statements) {
+                SQLiteStatement statement = statements.get(db, sql);
+                for (T t : items) {
+                    if (upsert) {
+                        metaData.bindUpsert(statement, t);
+                    } else {
+                        metaData.bindInsert(statement, t);
+                    }
+                    if (count == ids.length) {
+                        ids = grow(ids, Math.max(16, count * 2));
+                    }
+                    ids[count++] = statement.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (instrumented) {
+            recordQuery(db, sql, null, count, System.nanoTime() - start, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            for (int i = 0; i < count; i++) {
+                cache.remove(ids[i]);
+            }
+        }
+        ids = count == ids.length ? ids : grow(ids, count);
+        if (!listeners.isEmpty()) {
+            notifyChange(upsert ? ChangeListener.Operation.UPDATE : ChangeListener.Operation.INSERT, ids);
+        }
+        return ids;
+    }
+
+    private static long[] grow(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
     /**
      * selectively load table
      *
      * @param whereClause where clause formatted for SQLite without the "WHERE"
      * @return list of elements that satisfy the predicate
      */
-    @SuppressWarnings("unchecked") //explained in place
     public List<T> get(String whereClause) {
-        ArrayList<T> items = new ArrayList<T>();
-        Cursor cursor =
-                db.query(metaData.getTableName(), metaData.getColumnNames(), whereClause,
-                        null, null, null, null);
-        cursor.moveToFirst();
-        while (!cursor.isAfterLast()) {
-            //noinspection unchecked
-            //cursor to object generates object from constructor
-            //of T, so we are in fact type safe
-            items.add((T) metaData.cursorToObject(cursor));
-            cursor.moveToNext();
-        }
-        cursor.close();
-        return items;
+        return get(whereClause, null);
+    }
+
+    /**
+     * selectively load table
+     * use ? placeholders and arguments for values so the compiled query can be reused
+     *
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     * @return list of elements that satisfy the predicate
+     */
+    public List<T> get(String whereClause, String[] selectionArgs) {
+        return list(false, metaData.getColumnNames(), whereClause, selectionArgs, null, null, null, null);
+    }
+
+    /**
+     * loads element by integer primary key
+     * served from identity map if caching is enabled
+     *
+     * @param id primary key value
+     * @return element or null if there is none
+     */
+    public T getById(long id) {
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            T t = cache.get(id);
+            if (t != null) {
+                return t;
+            }
+        }
+        ColumnMetaData primaryKey = metaData.getPrimaryKey();
+        if (primaryKey == null) {
+            throw new IllegalStateException("table " + metaData.getTableName() + " has no primary key");
+        }
+        List<T> items = get(primaryKey.getName() + " = ?", new String[]{Long.toString(id)});
+        if (items.isEmpty()) {
+            return null;
+        }
+        T t = items.get(0);
+        if (cache != null) {
+            cache.put(id, t);
+        }
+        return t;
+    }
+
+    /**
+     * lazily load table, rows are mapped as you iterate
+     *
+     * @param whereClause where clause formatted for SQLite without the "WHERE"
+     * @return iterator over elements that satisfy the predicate, close it if you stop early
+     */
+    public CursorIterator<T> iterate(String whereClause) {
+        return iterate(whereClause, false);
+    }
+
+    /**
+     * lazily load table, rows are mapped as you iterate
+     *
+     * @param whereClause where clause formatted for SQLite without the "WHERE"
+     * @param reuse       fill and return the same instance for every row
+     * @return iterator over elements that satisfy the predicate, close it if you stop early
+     */
+    public CursorIterator<T> iterate(String whereClause, boolean reuse) {
+        return iterate(whereClause, null, reuse);
+    }
+
+    /**
+     * lazily load table, rows are mapped as you iterate
+     *
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     * @param reuse         fill and return the same instance for every row
+     * @return iterator over elements that satisfy the predicate, close it if you stop early
+     *         it holds a read connection until closed
+     */
+    public CursorIterator<T> iterate(String whereClause, String[] selectionArgs, boolean reuse) {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, metaData.getTableName(), metaData.getColumnNames(),
+                whereClause, null, null, null, null);
+        return cursorIterator(sql, selectionArgs, reuse);
+    }
+
+    /**
+     * runs select sql on a read connection and maps rows lazily
+     * when instrumented, timings are recorded once the iterator is closed
+     */
+    CursorIterator<T> cursorIterator(String sql, Object[] selectionArgs, boolean reuse) {
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        Cursor cursor = readerQuery(sql, selectionArgs);
+        try {
+            return new CursorIterator<T>(cursor, metaData, reuse, instrumented ? this : null, sql, selectionArgs, start);
+        } catch (RuntimeException e) {
+            cursor.close(); //gives the read connection back
+            throw e;
+        }
+    }
+
+    /**
+     * pages through the table in order of one column using keyset pagination
+     * see KeysetPager
+     *
+     * @param orderColumn   column to order by, should be indexed
+     * @param descending    order direction
+     * @param pageSize      rows per page
+     * @param whereClause   additional filter or null
+     * @param selectionArgs values for ? placeholders in where clause
+     * @param prefetch      executor to load following page in background, may be null
+     * @return pager positioned before first page
+     */
+    public KeysetPager<T> pager(String orderColumn, boolean descending, int pageSize, String whereClause,
+                                String[] selectionArgs, Executor prefetch) {
+        return new KeysetPager<T>(this, orderColumn, descending, pageSize, whereClause, selectionArgs, prefetch);
+    }
+
+    /**
+     * full text search over columns annotated with FullText
+     * results are ranked by number of matched terms, best first
+     *
+     * @param match fts3 match expression, e.g. "yoda OR jedi*"
+     * @return matching elements
+     */
+    @SuppressWarnings("unchecked") //see list
+    public List<T> search(String match) {
+        FullTextMetaData fullText = metaData.getFullText();
+        if (fullText == null) {
+            throw new IllegalStateException(metaData.getTableName() + " has no full text columns");
+        }
+        String sql = fullText.getSearchSql();
+        String[] args = new String[]{match};
+        final ArrayList<T> items = new ArrayList<T>();
+        final ArrayList<Integer> matches = new ArrayList<Integer>();
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long mappingNanos = 0;
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            Cursor cursor = reader.rawQuery(sql, args);
+            Projection projection = Projection.resolve(metaData, cursor);
+            int offsets = cursor.getColumnCount() - 1;
+            while (cursor.moveToNext()) {
+                long mappingStart = instrumented ? System.nanoTime() : 0;
+                items.add((T) metaData.cursorToObject(cursor, projection));
+                if (instrumented) {
+                    mappingNanos += System.nanoTime() - mappingStart;
+                }
+                matches.add(countMatches(cursor.getString(offsets)));
+            }
+            cursor.close();
+            if (instrumented) {
+                recordQuery(reader, sql, args, items.size(), System.nanoTime() - start - mappingNanos, mappingNanos);
+            }
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        //stable, equally ranked rows stay in table order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return matches.get(b).compareTo(matches.get(a));
+            }
+        });
+        ArrayList<T> ranked = new ArrayList<T>(order.length);
+        for (Integer i : order) {
+            ranked.add(items.get(i));
+        }
+        return ranked;
+    }
+
+    /**
+     * @param offsets result of fts3 offsets(), four integers per matched term
+     * @return number of matched terms
+     */
+    private static int countMatches(String offsets) {
+        if (offsets == null || offsets.length() == 0) {
+            return 0;
+        }
+        int values = 1;
+        for (int i = 0; i < offsets.length(); i++) {
+            if (offsets.charAt(i) == ' ') {
+                values++;
+            }
+        }
+        return values / 4;
     }
 
     /**
@@ -185,7 +779,414 @@ public class Datasource<T> {
      */
     public Cursor query(boolean distinct, String[] columns, String selection, String groupBy,
                         String having, String orderBy, String limit) {
-        return db.query(distinct, metaData.getTableName(), columns, selection, null, groupBy, having, orderBy, limit);
+        return query(distinct, columns, selection, null, groupBy, having, orderBy, limit);
+    }
+
+    /**
+     * Wrapper for sqlite database query
+     *
+     * @param distinct      adds the Distintc keyword to query
+     * @param columns       array of column names
+     * @param selection     where clause
+     * @param selectionArgs values for ? placeholders in selection
+     * @param groupBy       group by clause
+     * @param having        having clause
+     * @param orderBy       order by clause
+     * @param limit         limit clause
+     * @return cursor over results, runs on a read connection which is held until the cursor is closed
+     */
+    public Cursor query(boolean distinct, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        return readerQuery(distinct, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    /**
+     * runs query on a read connection that is given back when the returned cursor is closed
+     */
+    private Cursor readerQuery(boolean distinct, String[] columns, String selection, String[] selectionArgs,
+                               String groupBy, String having, String orderBy, String limit) {
+        return readerQuery(SQLiteQueryBuilder.buildQueryString(distinct, metaData.getTableName(), columns,
+                selection, groupBy, having, orderBy, limit), selectionArgs);
+    }
+
+    /**
+     * runs select sql on a read connection, the connection is released when the cursor is closed
+     */
+    Cursor readerQuery(String sql, Object[] selectionArgs) {
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            return new ReaderCursor(TypedQuery.rawQuery(reader, sql, selectionArgs), reader);
+        } catch (RuntimeException e) {
+            proxy.releaseReadableDatabase(reader);
+            throw e;
+        }
+    }
+
+    /**
+     * gives its read connection back to the proxy on close
+     */
+    private class ReaderCursor extends CursorWrapper {
+        private SQLiteDatabase reader;
+
+        private ReaderCursor(Cursor cursor, SQLiteDatabase reader) {
+            super(cursor);
+            this.reader = reader;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (reader != null) {
+                proxy.releaseReadableDatabase(reader);
+                reader = null;
+            }
+        }
+    }
+
+    /**
+     * fills a relation field of all items using one query per MAX_BIND_ARGS distinct keys
+     * instead of one query per item
+     *
+     * @param items  loaded elements, e.g. one page of results
+     * @param field  name of a field annotated with OneToMany or ManyToOne
+     * @param target datasource of the related table
+     */
+    public void loadRelation(List<T> items, String field, Datasource<?> target) {
+        RelationMetaData relation = metaData.getRelation(field);
+        if (relation == null) {
+            throw new IllegalArgumentException("no relation " + field + " in " + metaData.getTableName());
+        }
+        TableMetaData targetMeta = target.getMetaData();
+        if (target.getType() != relation.getTarget()) {
+            throw new IllegalArgumentException("relation " + field + " needs datasource for "
+                    + relation.getTarget().getName());
+        }
+
+        if (relation.isToMany()) {
+            ColumnMetaData key = integerColumn(metaData, metaData.getPrimaryKey());
+            ColumnMetaData foreignKey = integerColumn(targetMeta, targetMeta.getColumn(relation.getForeignKey()));
+            HashMap<Long, List<Object>> children = new HashMap<Long, List<Object>>();
+            for (T t : items) {
+                children.put(key.getLong(t), new ArrayList<Object>());
+            }
+            for (Object child : target.loadIn(foreignKey.getName(), children.keySet())) {
+                children.get(foreignKey.getLong(child)).add(child);
+            }
+            for (T t : items) {
+                relation.set(t, children.get(key.getLong(t)));
+            }
+        } else {
+            ColumnMetaData foreignKey = metaData.getColumn(relation.getForeignKey());
+            ColumnMetaData targetKey = integerColumn(targetMeta, targetMeta.getPrimaryKey());
+            HashMap<Long, Object> parents = new HashMap<Long, Object>();
+            for (T t : items) {
+                parents.put(foreignKey.getLong(t), null);
+            }
+            for (Object parent : target.loadIn(targetKey.getName(), parents.keySet())) {
+                parents.put(targetKey.getLong(parent), parent);
+            }
+            for (T t : items) {
+                relation.set(t, parents.get(foreignKey.getLong(t)));
+            }
+        }
+    }
+
+    private static ColumnMetaData integerColumn(TableMetaData table, ColumnMetaData column) {
+        if (column == null || column.getType() != Type.INTEGER) {
+            throw new IllegalArgumentException("relations need integer keys in " + table.getTableName());
+        }
+        return column;
+    }
+
+    /**
+     * loads rows whose column is one of the keys, MAX_BIND_ARGS keys per query
+     */
+    List<T> loadIn(String column, Collection<Long> keys) {
+        ArrayList<T> items = new ArrayList<T>();
+        String[] args = new String[Math.min(MAX_BIND_ARGS, keys.size())];
+        String fullChunk = inClause(column, args.length);
+        int count = 0;
+        for (Long key : keys) {
+            args[count++] = key.toString();
+            if (count == args.length) {
+                items.addAll(list(false, null, fullChunk, args, null, null, null, null));
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            String[] rest = new String[count];
+            System.arraycopy(args, 0, rest, 0, count);
+            items.addAll(list(false, null, inClause(column, count), rest, null, null, null, null));
+        }
+        return items;
+    }
+
+    /**
+     * @return "column in (?, ?, ...)" with count placeholders
+     */
+    static String inClause(String column, int count) {
+        StringBuilder sb = new StringBuilder(column.length() + 6 + count * 3);
+        sb.append(column);
+        sb.append(" in (");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    /**
+     * counts rows without loading them
+     *
+     * @param whereClause   where clause formatted for SQLite without the "WHERE", null counts all rows
+     * @param selectionArgs values for ? placeholders in where clause
+     * @return number of matching rows
+     */
+    public long count(String whereClause, String[] selectionArgs) {
+        return simpleQueryForLong(aggregateSql("count(*)", whereClause), selectionArgs);
+    }
+
+    /**
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     * @return true if at least one row matches
+     */
+    public boolean exists(String whereClause, String[] selectionArgs) {
+        String sql = "select exists(" + aggregateSql("1", whereClause) + ")";
+        return simpleQueryForLong(sql, selectionArgs) != 0;
+    }
+
+    /**
+     * aggregates below only accept integer and real columns
+     * results are doubles, use sumLong, minLong and maxLong for exact integer results
+     *
+     * @return sum of column over matching rows, 0 if there are none
+     */
+    public double sum(String column, String whereClause, String[] selectionArgs) {
+        return simpleQueryForDouble("total(" + checkNumericColumn(column) + ")", whereClause, selectionArgs);
+    }
+
+    /**
+     * @return average of column over matching rows, NaN if there are none
+     */
+    public double avg(String column, String whereClause, String[] selectionArgs) {
+        return simpleQueryForDouble("avg(" + checkNumericColumn(column) + ")", whereClause, selectionArgs);
+    }
+
+    /**
+     * @return minimum of column over matching rows, NaN if there are none
+     */
+    public double min(String column, String whereClause, String[] selectionArgs) {
+        return simpleQueryForDouble("min(" + checkNumericColumn(column) + ")", whereClause, selectionArgs);
+    }
+
+    /**
+     * @return maximum of column over matching rows, NaN if there are none
+     */
+    public double max(String column, String whereClause, String[] selectionArgs) {
+        return simpleQueryForDouble("max(" + checkNumericColumn(column) + ")", whereClause, selectionArgs);
+    }
+
+    /**
+     * exact variants of the aggregates above for integer columns, doubles lose precision above 2^53
+     * they only accept integer columns
+     *
+     * @return sum of column over matching rows, 0 if there are none
+     * @throws android.database.sqlite.SQLiteException if the sum overflows a long
+     */
+    public long sumLong(String column, String whereClause, String[] selectionArgs) {
+        return simpleQueryForLong(aggregateSql("sum(" + checkIntegerColumn(column) + ")", whereClause), selectionArgs);
+    }
+
+    /**
+     * @return minimum of column over matching rows, null if there are none
+     */
+    public Long minLong(String column, String whereClause, String[] selectionArgs) {
+        return queryForLong(aggregateSql("min(" + checkIntegerColumn(column) + ")", whereClause), selectionArgs);
+    }
+
+    /**
+     * @return maximum of column over matching rows, null if there are none
+     */
+    public Long maxLong(String column, String whereClause, String[] selectionArgs) {
+        return queryForLong(aggregateSql("max(" + checkIntegerColumn(column) + ")", whereClause), selectionArgs);
+    }
+
+    /**
+     * @param column        column name
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     * @return distinct values of column over matching rows as strings, in ascending order
+     */
+    public List<String> distinctValues(String column, String whereClause, String[] selectionArgs) {
+        String[] columns = {checkColumn(column)};
+        ArrayList<String> values = new ArrayList<String>();
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            Cursor cursor = reader.query(true, metaData.getTableName(), columns, whereClause, selectionArgs,
+                    null, null, column, null);
+            while (cursor.moveToNext()) {
+                values.add(cursor.getString(0));
+            }
+            cursor.close();
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+        return values;
+    }
+
+    private String checkColumn(String column) {
+        if (metaData.getColumn(column) == null) {
+            throw new IllegalArgumentException("no column " + column + " in " + metaData.getTableName());
+        }
+        return column;
+    }
+
+    private String checkNumericColumn(String column) {
+        checkColumn(column);
+        Type type = metaData.getColumn(column).getType();
+        if (type != Type.INTEGER && type != Type.FLOAT) {
+            throw new IllegalArgumentException("column " + column + " in " + metaData.getTableName() + " is not numeric");
+        }
+        return column;
+    }
+
+    private String checkIntegerColumn(String column) {
+        checkColumn(column);
+        if (metaData.getColumn(column).getType() != Type.INTEGER) {
+            throw new IllegalArgumentException("column " + column + " in " + metaData.getTableName() + " is not integer");
+        }
+        return column;
+    }
+
+    private String aggregateSql(String expression, String whereClause) {
+        String sql = "select " + expression + " from " + metaData.getTableName();
+        return whereClause == null ? sql : sql + " where " + whereClause;
+    }
+
+    /**
+     * runs one row one column query on a read connection, a null result is 0
+     */
+    private long simpleQueryForLong(String sql, String[] selectionArgs) {
+        Long value = queryForLong(sql, selectionArgs);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * same as simpleQueryForLong but keeps a null result (nothing to aggregate)
+     */
+    private Long queryForLong(String sql, String[] selectionArgs) {
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        Long value;
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            Cursor cursor = reader.rawQuery(sql, selectionArgs);
+            try {
+                value = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : null;
+            } finally {
+                cursor.close();
+            }
+            if (instrumented) {
+                recordQuery(reader, sql, selectionArgs, 1, System.nanoTime() - start, 0);
+            }
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+        return value;
+    }
+
+    /**
+     * same as simpleQueryForLong, a null result (nothing to aggregate) is NaN
+     */
+    private double simpleQueryForDouble(String expression, String whereClause, String[] selectionArgs) {
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        String sql = aggregateSql(expression, whereClause);
+        double value;
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            Cursor cursor = reader.rawQuery(sql, selectionArgs);
+            try {
+                value = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getDouble(0) : Double.NaN;
+            } finally {
+                cursor.close();
+            }
+            if (instrumented) {
+                recordQuery(reader, sql, selectionArgs, 1, System.nanoTime() - start, 0);
+            }
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+        return value;
+    }
+
+    /**
+     * runs query on a read connection and maps all rows
+     * columns are mapped by name, null selects all columns
+     */
+    List<T> list(boolean distinct, String[] columns, String selection, String[] selectionArgs,
+                 String groupBy, String having, String orderBy, String limit) {
+        if (columns == null) {
+            columns = metaData.getColumnNames();
+        }
+        return list(SQLiteQueryBuilder.buildQueryString(distinct, metaData.getTableName(), columns,
+                selection, groupBy, having, orderBy, limit), selectionArgs);
+    }
+
+    /**
+     * runs select sql on a read connection and maps all rows
+     * columns are mapped by name
+     */
+    @SuppressWarnings("unchecked") //explained in place
+    List<T> list(String sql, Object[] selectionArgs) {
+        ArrayList<T> items = new ArrayList<T>();
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long mappingNanos = 0;
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            Cursor cursor = TypedQuery.rawQuery(reader, sql, selectionArgs);
+            Projection projection = Projection.resolve(metaData, cursor);
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                long mappingStart = instrumented ? System.nanoTime() : 0;
+                //noinspection unchecked
+                //cursor to object generates object from constructor
+                //of T, so we are in fact type safe
+                items.add((T) metaData.cursorToObject(cursor, projection));
+                if (instrumented) {
+                    mappingNanos += System.nanoTime() - mappingStart;
+                }
+                cursor.moveToNext();
+            }
+            cursor.close();
+            if (instrumented) {
+                recordQuery(reader, sql, selectionArgs, items.size(),
+                        System.nanoTime() - start - mappingNanos, mappingNanos);
+            }
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+        return items;
+    }
+
+    /**
+     * select sql for a query shape, built once per shape and shared by all queries on this datasource
+     *
+     * @param shape key identifying all the other arguments
+     * @return select sql
+     */
+    String selectSql(String shape, boolean distinct, String[] columns, String selection, String orderBy, String limit) {
+        synchronized (queryShapes) {
+            String sql = queryShapes.get(shape);
+            if (sql == null) {
+                sql = SQLiteQueryBuilder.buildQueryString(distinct, metaData.getTableName(), columns,
+                        selection, null, null, orderBy, limit);
+                queryShapes.put(shape, sql);
+            }
+            return sql;
+        }
     }
 
     /**
@@ -194,7 +1195,441 @@ public class Datasource<T> {
      * @param whereClause where clause formatted for SQLite without the "WHERE"
      */
     public void delete(String whereClause) {
-        db.delete(metaData.getTableName(), whereClause, null);
+        delete(whereClause, null);
+    }
+
+    /**
+     * selectively remove elements
+     * statement is compiled once per where clause, use ? placeholders for values
+     *
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     */
+    public void delete(String whereClause, String[] selectionArgs) {
+        String sql = "delete from " + metaData.getTableName();
+        if (whereClause != null) {
+            sql += " where " + whereClause;
+        }
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long deleted = 0;
+        db.beginTransaction();
+        try {
+            synchronized (statements) {
+                SQLiteStatement statement = statements.get(db, sql);
+                StatementCache.bindAll(statement, 1, selectionArgs);
+                statement.execute();
+                if (instrumented) {
+                    deleted = statements.get(db, CHANGES_SQL).simpleQueryForLong();
+                }
+            }
+        } finally {
+            //a failed statement is already rolled back, don't fail an enclosing transaction
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
+        if (instrumented) {
+            recordQuery(db, sql, selectionArgs, (int) deleted, System.nanoTime() - start, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            cache.clear();
+        }
+        notifyChange(ChangeListener.Operation.DELETE, null);
+    }
+
+    /**
+     * deletes rows by integer primary key in a single transaction
+     * ids are bound in chunks of MAX_BIND_ARGS through cached statements
+     *
+     * @param ids primary keys of rows to delete
+     * @return number of deleted rows
+     */
+    public long deleteByIds(long[] ids) {
+        String key = integerColumn(metaData, metaData.getPrimaryKey()).getName();
+        String prefix = "delete from " + metaData.getTableName() + " where ";
+        boolean instrumented = instrumented();
+        long startNanos = instrumented ? System.nanoTime() : 0;
+        String first = null;
+        long deleted = 0;
+        db.beginTransaction();
+        try {
+            synchronized (statements) {
+                String fullChunk = null;
+                for (int start = 0; start < ids.length; start += MAX_BIND_ARGS) {
+                    int count = Math.min(MAX_BIND_ARGS, ids.length - start);
+                    String sql;
+                    if (count == MAX_BIND_ARGS) {
+                        if (fullChunk == null) {
+                            fullChunk = prefix + inClause(key, count);
+                        }
+                        sql = fullChunk;
+                    } else {
+                        sql = prefix + inClause(key, count);
+                    }
+                    if (first == null) {
+                        first = sql;
+                    }
+                    SQLiteStatement statement = statements.get(db, sql);
+                    for (int i = 0; i < count; i++) {
+                        statement.bindLong(i + 1, ids[start + i]);
+                    }
+                    statement.execute();
+                    deleted += statements.get(db, CHANGES_SQL).simpleQueryForLong();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (instrumented && first != null) {
+            recordQuery(db, first, null, (int) deleted, System.nanoTime() - startNanos, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            for (long id : ids) {
+                cache.remove(id);
+            }
+        }
+        notifyChange(ChangeListener.Operation.DELETE, ids);
+        return deleted;
+    }
+
+    /**
+     * sets columns of all matching rows to values of patch
+     *
+     * @param patch         column names and new values
+     * @param whereClause   where clause formatted for SQLite without the "WHERE"
+     * @param selectionArgs values for ? placeholders in where clause
+     * @return number of updated rows
+     */
+    public long updateWhere(ContentValues patch, String whereClause, String[] selectionArgs) {
+        List<String> columns = patchColumns(patch);
+        String sql = updatePrefix(columns);
+        if (whereClause != null) {
+            sql += " where " + whereClause;
+        }
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long updated;
+        db.beginTransaction();
+        try {
+            synchronized (statements) {
+                SQLiteStatement statement = statements.get(db, sql);
+                bindPatch(statement, patch, columns);
+                StatementCache.bindAll(statement, columns.size() + 1, selectionArgs);
+                statement.execute();
+                updated = statements.get(db, CHANGES_SQL).simpleQueryForLong();
+            }
+        } finally {
+            //a failed statement is already rolled back, don't fail an enclosing transaction
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
+        if (instrumented) {
+            recordQuery(db, sql, null, (int) updated, System.nanoTime() - start, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            cache.clear();
+        }
+        notifyChange(ChangeListener.Operation.UPDATE, null);
+        return updated;
+    }
+
+    /**
+     * sets columns of rows with given integer primary keys to values of patch in a single transaction
+     * ids are bound in chunks through cached statements so the total stays under MAX_BIND_ARGS
+     *
+     * @param patch column names and new values
+     * @param ids   primary keys of rows to update
+     * @return number of updated rows
+     */
+    public long updateByIds(ContentValues patch, long[] ids) {
+        String key = integerColumn(metaData, metaData.getPrimaryKey()).getName();
+        List<String> columns = patchColumns(patch);
+        String prefix = updatePrefix(columns) + " where ";
+        int chunk = MAX_BIND_ARGS - columns.size();
+        boolean instrumented = instrumented();
+        long startNanos = instrumented ? System.nanoTime() : 0;
+        String first = null;
+        long updated = 0;
+        db.beginTransaction();
+        try {
+            synchronized (statements) {
+                String fullChunk = null;
+                for (int start = 0; start < ids.length; start += chunk) {
+                    int count = Math.min(chunk, ids.length - start);
+                    String sql;
+                    if (count == chunk) {
+                        if (fullChunk == null) {
+                            fullChunk = prefix + inClause(key, count);
+                        }
+                        sql = fullChunk;
+                    } else {
+                        sql = prefix + inClause(key, count);
+                    }
+                    if (first == null) {
+                        first = sql;
+                    }
+                    SQLiteStatement statement = statements.get(db, sql);
+                    bindPatch(statement, patch, columns);
+                    for (int i = 0; i < count; i++) {
+                        statement.bindLong(columns.size() + i + 1, ids[start + i]);
+                    }
+                    statement.execute();
+                    updated += statements.get(db, CHANGES_SQL).simpleQueryForLong();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (instrumented && first != null) {
+            recordQuery(db, first, null, (int) updated, System.nanoTime() - startNanos, 0);
+        }
+        IdentityCache<T> cache = this.cache;
+        if (cache != null) {
+            for (long id : ids) {
+                cache.remove(id);
+            }
+        }
+        notifyChange(ChangeListener.Operation.UPDATE, ids);
+        return updated;
+    }
+
+    /**
+     * @return validated column names of patch in stable order
+     */
+    private List<String> patchColumns(ContentValues patch) {
+        if (patch.size() == 0 || patch.size() >= MAX_BIND_ARGS) {
+            throw new IllegalArgumentException("patch must have between 1 and " + (MAX_BIND_ARGS - 1) + " values");
+        }
+        ArrayList<String> columns = new ArrayList<String>(patch.size());
+        for (Map.Entry<String, Object> entry : patch.valueSet()) {
+            columns.add(checkColumn(entry.getKey()));
+        }
+        Collections.sort(columns);
+        return columns;
+    }
+
+    private String updatePrefix(List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("update ");
+        sb.append(metaData.getTableName());
+        sb.append(" set ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns.get(i));
+            sb.append(" = ?");
+        }
+        return sb.toString();
+    }
+
+    private static void bindPatch(SQLiteStatement statement, ContentValues patch, List<String> columns) {
+        for (int i = 0; i < columns.size(); i++) {
+            StatementCache.bindValue(statement, i + 1, patch.get(columns.get(i)));
+        }
+    }
+
+    /**
+     * streams all rows to out in a compact binary format, values are written as stored
+     * so no objects are created. out is flushed but not closed
+     *
+     * @param out destination
+     * @return number of exported rows
+     * @throws IOException if writing fails
+     */
+    public long exportTo(OutputStream out) throws IOException {
+        ArrayList<ColumnMetaData> columns = metaData.getColumns();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        long rows = 0;
+        SQLiteDatabase reader = proxy.acquireReadableDatabase();
+        try {
+            //query first, nothing is written to out if it fails
+            Cursor cursor = reader.query(metaData.getTableName(), metaData.getColumnNames(),
+                    null, null, null, null, null);
+            try {
+                data.writeInt(TableSnapshot.MAGIC);
+                data.writeByte(TableSnapshot.VERSION);
+                TableSnapshot.writeVarLong(data, columns.size());
+                for (ColumnMetaData column : columns) {
+                    TableSnapshot.writeString(data, column.getName());
+                    data.writeByte(column.getType().getValue());
+                }
+                while (cursor.moveToNext()) {
+                    data.writeByte(TableSnapshot.ROW);
+                    for (int i = 0; i < columns.size(); i++) {
+                        if (cursor.isNull(i)) {
+                            data.writeByte(TableSnapshot.TAG_NULL);
+                            continue;
+                        }
+                        switch (columns.get(i).getType()) {
+                            case INTEGER:
+                                data.writeByte(TableSnapshot.TAG_INTEGER);
+                                TableSnapshot.writeVarLong(data, cursor.getLong(i));
+                                break;
+                            case FLOAT:
+                                data.writeByte(TableSnapshot.TAG_FLOAT);
+                                data.writeDouble(cursor.getDouble(i));
+                                break;
+                            case BLOB:
+                                data.writeByte(TableSnapshot.TAG_BLOB);
+                                TableSnapshot.writeBytes(data, cursor.getBlob(i));
+                                break;
+                            default:
+                                data.writeByte(TableSnapshot.TAG_STRING);
+                                TableSnapshot.writeString(data, cursor.getString(i));
+                        }
+                    }
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            proxy.releaseReadableDatabase(reader);
+        }
+        data.writeByte(TableSnapshot.END);
+        data.flush();
+        return rows;
+    }
+
+    /**
+     * inserts rows written by exportTo, IMPORT_CHUNK rows per transaction
+     * rows with an existing primary key replace the stored row. columns missing in this table
+     * are skipped and columns missing in the export are left NULL. in is read to the end marker
+     * and possibly further, but not closed
+     * listeners get a single UPDATE with null ids, since replaced rows can't be told from new ones
+     *
+     * @param in source
+     * @return number of imported rows
+     * @throws IOException if reading fails or in doesn't hold an export
+     */
+    public long importFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (data.readInt() != TableSnapshot.MAGIC) {
+            throw new IOException("not a table export");
+        }
+        int version = data.readUnsignedByte();
+        if (version != TableSnapshot.VERSION) {
+            throw new IOException("unsupported export version " + version);
+        }
+        int count = TableSnapshot.readLength(data);
+        //position of each stored column in the insert statement, 0 if this table doesn't have it
+        int[] positions = new int[count];
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert or replace into ");
+        sb.append(metaData.getTableName());
+        sb.append(" (");
+        int bound = 0;
+        for (int i = 0; i < count; i++) {
+            String name = TableSnapshot.readString(data);
+            data.readUnsignedByte(); //storage type, values carry their own tags
+            if (metaData.getColumn(name) != null) {
+                if (bound > 0) {
+                    sb.append(", ");
+                }
+                sb.append(name);
+                positions[i] = ++bound;
+            }
+        }
+        if (bound == 0) {
+            throw new IOException("export has no columns of " + metaData.getTableName());
+        }
+        sb.append(") values (");
+        for (int i = 0; i < bound; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        sb.append(")");
+        String sql = sb.toString();
+
+        boolean instrumented = instrumented();
+        long start = instrumented ? System.nanoTime() : 0;
+        long rows = 0;
+        boolean more = true;
+        //one off statement, compiled here so it doesn't evict cached ones
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            while (more) {
+                //the statement isn't shared, so statements isn't locked
+                db.beginTransaction();
+                try {
+                    for (int chunk = 0; chunk < IMPORT_CHUNK; chunk++) {
+                        int marker = data.readUnsignedByte();
+                        if (marker == TableSnapshot.END) {
+                            more = false;
+                            break;
+                        } else if (marker != TableSnapshot.ROW) {
+                            throw new IOException("malformed export, row marker " + marker);
+                        }
+                        for (int i = 0; i < count; i++) {
+                            readValue(data, statement, positions[i]);
+                        }
+                        statement.execute();
+                        rows++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            statement.close();
+            IdentityCache<T> cache = this.cache;
+            if (cache != null) {
+                cache.clear();
+            }
+            if (rows > 0) {
+                notifyChange(ChangeListener.Operation.UPDATE, null);
+            }
+        }
+        if (instrumented) {
+            recordQuery(db, sql, null, (int) rows, System.nanoTime() - start, 0);
+        }
+        return rows;
+    }
+
+    /**
+     * reads one tagged value and binds it, or skips it if position is 0
+     */
+    private static void readValue(DataInputStream data, SQLiteStatement statement, int position) throws IOException {
+        int tag = data.readUnsignedByte();
+        switch (tag) {
+            case TableSnapshot.TAG_NULL:
+                if (position > 0) {
+                    statement.bindNull(position);
+                }
+                break;
+            case TableSnapshot.TAG_INTEGER:
+                long l = TableSnapshot.readVarLong(data);
+                if (position > 0) {
+                    statement.bindLong(position, l);
+                }
+                break;
+            case TableSnapshot.TAG_FLOAT:
+                double d = data.readDouble();
+                if (position > 0) {
+                    statement.bindDouble(position, d);
+                }
+                break;
+            case TableSnapshot.TAG_STRING:
+                String s = TableSnapshot.readString(data);
+                if (position > 0) {
+                    statement.bindString(position, s);
+                }
+                break;
+            case TableSnapshot.TAG_BLOB:
+                byte[] b = TableSnapshot.readBytes(data);
+                if (position > 0) {
+                    statement.bindBlob(position, b);
+                }
+                break;
+            default:
+                throw new IOException("malformed export, value tag " + tag);
+        }
     }
 
     /**
@@ -208,11 +1643,14 @@ public class Datasource<T> {
         private Context mContext;
         private DatabaseOpenHelper helper;
 
-        private SingleTableProxy(Context context, Class c) {
+        private SingleTableProxy(Context context, Class c, Migration[] migrations) {
             this.mContext = context;
             TableMetaData meta = MetaDataFactory.get(c);
+            @SuppressWarnings(value = "unchecked")
+            Table table = (Table) c.getAnnotation(Table.class);
             helper = new DatabaseOpenHelper(context, new TableMetaData[]{meta},
-                    meta.getTableName() + ".db", meta.getVersion());
+                    meta.getTableName() + ".db", meta.getVersion(), ConnectionOptions.of(table),
+                    migrations);
         }
 
         @Override
@@ -224,5 +1662,19 @@ public class Datasource<T> {
         public SQLiteDatabase getWritableDatabase() {
             return helper.getWritableDatabase();
         }
+
+        @Override
+        public SQLiteDatabase acquireReadableDatabase() {
+            return helper.acquireReader();
+        }
+
+        @Override
+        public void releaseReadableDatabase(SQLiteDatabase db) {
+            helper.releaseReader(db);
+        }
+
+        private void close() {
+            helper.close();
+        }
     }
 }
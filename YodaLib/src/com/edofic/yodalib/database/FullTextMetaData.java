@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.util.List;
+
+/**
+ * Meta data about the full text shadow table of a table
+ * Rows are keyed by the rowid of the table (docid in fts), triggers copy text columns on every write.
+ */
+public class FullTextMetaData {
+    private final String tableName;
+    private final String[] columns;
+    private final String createSql;
+    private final String[] triggerNames;
+    private final String[] triggerSql;
+    private final String populateSql;
+    private final String searchSql;
+
+    FullTextMetaData(String table, String[] tableColumns, List<ColumnMetaData> textColumns) {
+        if (textColumns.isEmpty()) {
+            throw new IllegalArgumentException("full text table for " + table + " needs at least one text column");
+        }
+        tableName = table + "_fts";
+        columns = new String[textColumns.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = textColumns.get(i).getName();
+        }
+        String list = join("", columns);
+        String newValues = join("new.", columns);
+
+        createSql = "create virtual table " + tableName + " using fts3(" + list + ")";
+        String insert = "insert into " + tableName + " (docid, " + list + ") values (new.rowid, " + newValues + "); ";
+        triggerNames = new String[]{tableName + "_insert", tableName + "_update", tableName + "_delete"};
+        triggerSql = new String[]{
+                //delete first, a replaced row keeps its rowid but doesn't fire the delete trigger
+                "create trigger " + triggerNames[0] + " after insert on " + table + " begin delete from "
+                        + tableName + " where docid = new.rowid; " + insert + "end",
+                "create trigger " + triggerNames[1] + " after update on " + table + " begin delete from "
+                        + tableName + " where docid = old.rowid; " + insert + "end",
+                "create trigger " + triggerNames[2] + " after delete on " + table + " begin delete from "
+                        + tableName + " where docid = old.rowid; end"
+        };
+        populateSql = "insert into " + tableName + " (docid, " + list + ") select rowid, " + list + " from " + table;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("select ");
+        for (String column : tableColumns) {
+            sb.append(table).append(".").append(column).append(" as ").append(column).append(", ");
+        }
+        sb.append("offsets(").append(tableName).append(") from ").append(tableName);
+        sb.append(" join ").append(table).append(" on ").append(table).append(".rowid = ");
+        sb.append(tableName).append(".docid where ").append(tableName).append(" match ?");
+        searchSql = sb.toString();
+    }
+
+    private static String join(String prefix, String[] names) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(prefix).append(names[i]);
+        }
+        return sb.toString();
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public String getCreateSql() {
+        return createSql;
+    }
+
+    public String[] getTriggerNames() {
+        return triggerNames;
+    }
+
+    public String[] getTriggerSql() {
+        return triggerSql;
+    }
+
+    /**
+     * @return statement copying existing rows, for shadow tables created after the table
+     */
+    public String getPopulateSql() {
+        return populateSql;
+    }
+
+    /**
+     * @return query selecting all table columns followed by offsets() for one match argument
+     */
+    String getSearchSql() {
+        return searchSql;
+    }
+}
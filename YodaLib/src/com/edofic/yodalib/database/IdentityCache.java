@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded LRU map from primary key to loaded object.
+ * Counts hits and misses so the size can be tuned.
+ */
+class IdentityCache<T> {
+    private final LinkedHashMap<Long, T> objects;
+    private long hits;
+    private long misses;
+
+    IdentityCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("cache size must be positive");
+        }
+        objects = new LinkedHashMap<Long, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized T get(long id) {
+        T t = objects.get(id);
+        if (t == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return t;
+    }
+
+    synchronized void put(long id, T t) {
+        objects.put(id, t);
+    }
+
+    synchronized void remove(long id) {
+        objects.remove(id);
+    }
+
+    synchronized void clear() {
+        objects.clear();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return objects.size();
+    }
+}
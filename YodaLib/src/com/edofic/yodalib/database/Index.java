@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an index on a table, used inside Table.indices
+ * Name defaults to table name followed by column names.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Index {
+    /**
+     * specifiy index name
+     *
+     * @return index name
+     */
+    public String name() default "";
+
+    /**
+     * names of indexed columns in index order (mandatory)
+     *
+     * @return column names
+     */
+    public String[] columns();
+
+    /**
+     * toggles "unique" in sql create
+     * defaults to false
+     *
+     * @return is index unique
+     */
+    public boolean unique() default false;
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Meta data about a single index
+ * Contains name, indexed columns and the create script
+ */
+public class IndexMetaData {
+    private final String name;
+    private final String[] columns;
+    private final boolean unique;
+    private final String createSql;
+
+    IndexMetaData(String tableName, String name, String[] columns, boolean unique) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("index on " + tableName + " must have at least one column");
+        }
+        StringBuilder sb = new StringBuilder();
+        if (name.equals("")) {
+            sb.append(tableName);
+            for (String column : columns) {
+                sb.append("_");
+                sb.append(column);
+            }
+            sb.append("_idx");
+            name = sb.toString();
+            sb.setLength(0);
+        }
+        this.name = name;
+        this.columns = columns;
+        this.unique = unique;
+
+        sb.append(unique ? "create unique index if not exists " : "create index if not exists ");
+        sb.append(name);
+        sb.append(" on ");
+        sb.append(tableName);
+        sb.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns[i]);
+        }
+        sb.append(")");
+        createSql = sb.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public String getCreateSql() {
+        return createSql;
+    }
+}
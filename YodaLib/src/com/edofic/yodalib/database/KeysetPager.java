@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Pages through a table ordered by one column using keyset (seek) pagination.
+ * Every page continues after the last row of the previous one instead of using OFFSET,
+ * so with an index on the order column each page costs the same regardless of depth.
+ * Ties are broken by the primary key if the table has one, the order column should not contain nulls.
+ * If an executor is given the following page is loaded in background as soon as a page is returned.
+ */
+public class KeysetPager<T> {
+    private final Datasource<T> datasource;
+    private final ColumnMetaData key;
+    private final ColumnMetaData tieBreaker;
+    private final String[] whereArgs;
+    private final String firstWhere;
+    private final String seekWhere;
+    private final String orderBy;
+    private final String limit;
+    private final int pageSize;
+    private final Executor executor;
+
+    private String[] lastKey;
+    private boolean hasNext = true;
+    private FutureTask<List<T>> pending;
+
+    /**
+     * @param datasource  datasource to page through
+     * @param orderColumn column to order by, should be indexed
+     * @param descending  order direction
+     * @param pageSize    rows per page
+     * @param whereClause additional filter or null
+     * @param whereArgs   values for ? placeholders in where clause
+     * @param executor    executor for prefetching next page, null disables prefetching
+     */
+    KeysetPager(Datasource<T> datasource, String orderColumn, boolean descending, int pageSize,
+                String whereClause, String[] whereArgs, Executor executor) {
+        TableMetaData metaData = datasource.getMetaData();
+        key = metaData.getColumn(orderColumn);
+        if (key == null) {
+            throw new IllegalArgumentException("no column " + orderColumn + " in " + metaData.getTableName());
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        ColumnMetaData primaryKey = metaData.getPrimaryKey();
+        tieBreaker = primaryKey == key ? null : primaryKey;
+
+        this.datasource = datasource;
+        this.whereArgs = whereArgs == null ? new String[0] : whereArgs;
+        this.pageSize = pageSize;
+        this.limit = Integer.toString(pageSize);
+        this.executor = executor;
+
+        String direction = descending ? " desc" : " asc";
+        String compare = descending ? " < ?" : " > ?";
+        String seek;
+        if (tieBreaker == null) {
+            seek = key.getName() + compare;
+            orderBy = key.getName() + direction;
+        } else {
+            seek = "(" + key.getName() + compare + " or (" + key.getName() + " = ? and "
+                    + tieBreaker.getName() + compare + "))";
+            orderBy = key.getName() + direction + ", " + tieBreaker.getName() + direction;
+        }
+        firstWhere = whereClause;
+        seekWhere = whereClause == null ? seek : "(" + whereClause + ") and " + seek;
+    }
+
+    /**
+     * @return false once a page shorter than page size was returned
+     */
+    public synchronized boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * loads next page, or takes it from prefetch if it was already started
+     *
+     * @return next page, empty if there are no more rows
+     */
+    public synchronized List<T> next() {
+        List<T> page;
+        if (pending != null) {
+            try {
+                page = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for prefetched page");
+            } catch (ExecutionException e) {
+                throw new RuntimeException("prefetching page failed", e.getCause());
+            } finally {
+                pending = null;
+            }
+        } else {
+            page = load(lastKey);
+        }
+
+        hasNext = page.size() == pageSize;
+        if (!page.isEmpty()) {
+            T last = page.get(page.size() - 1);
+            lastKey = tieBreaker == null ? new String[]{key.toArg(last)}
+                    : new String[]{key.toArg(last), key.toArg(last), tieBreaker.toArg(last)};
+        }
+        if (hasNext && executor != null) {
+            final String[] from = lastKey;
+            pending = new FutureTask<List<T>>(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return load(from);
+                }
+            });
+            executor.execute(pending);
+        }
+        return page;
+    }
+
+    private List<T> load(String[] from) {
+        if (from == null) {
+            return datasource.list(false, null, firstWhere, whereArgs, null, null, orderBy, limit);
+        }
+        String[] args = new String[whereArgs.length + from.length];
+        System.arraycopy(whereArgs, 0, args, 0, whereArgs.length);
+        System.arraycopy(from, 0, args, whereArgs.length, from.length);
+        return datasource.list(false, null, seekWhere, args, null, null, orderBy, limit);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Query that is re-run in background whenever its datasource writes to the table.
+ * Bursts of writes are coalesced: while a re-run is queued further changes don't queue another one.
+ * Results are delivered with a diff against the previous result, computed by primary key,
+ * and only when something actually changed.
+ */
+public class LiveQuery<T> implements ChangeListener {
+    /**
+     * receives results of a live query
+     */
+    public interface Observer<T> {
+        /**
+         * @param result full current result
+         * @param diff   difference to previous result, null if table has no integer primary key
+         */
+        public void onResult(List<T> result, Diff<T> diff);
+
+        public void onError(Throwable error);
+    }
+
+    /**
+     * difference between two results of a live query
+     * on the first run all rows are added
+     */
+    public static class Diff<T> {
+        private final List<T> added;
+        private final List<T> removed;
+        private final List<T> changed;
+
+        Diff(List<T> added, List<T> removed, List<T> changed) {
+            this.added = added;
+            this.removed = removed;
+            this.changed = changed;
+        }
+
+        public List<T> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return elements of the previous result that are gone
+         */
+        public List<T> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return new versions of elements whose columns changed
+         */
+        public List<T> getChanged() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+
+    private final Datasource<T> datasource;
+    private final Query<T> query;
+    private final Executor executor;
+    private final Handler handler;
+    private final Observer<T> observer;
+    private final ColumnMetaData key;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private List<T> previous;
+    private volatile boolean started;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            LiveQuery.this.run();
+        }
+    };
+
+    /**
+     * @param datasource datasource to watch
+     * @param query      built query to re-run, it is not copied so don't modify it afterwards
+     *                   if it selects columns, the primary key must be one of them (results are diffed by it)
+     * @param executor   executor to run queries on
+     * @param handler    handler to deliver results on, null delivers on executor's thread
+     * @param observer   receives results
+     */
+    public LiveQuery(Datasource<T> datasource, Query<T> query, Executor executor, Handler handler,
+                     Observer<T> observer) {
+        this.datasource = datasource;
+        this.query = query;
+        this.executor = executor;
+        this.handler = handler;
+        this.observer = observer;
+        ColumnMetaData primaryKey = datasource.getMetaData().getPrimaryKey();
+        this.key = primaryKey != null && primaryKey.getType() == Type.INTEGER ? primaryKey : null;
+        if (key != null && !query.selects(key.getName())) {
+            throw new IllegalArgumentException("projection of a live query must include primary key " + key.getName());
+        }
+    }
+
+    /**
+     * starts watching and runs the query once
+     */
+    public void start() {
+        started = true;
+        datasource.addChangeListener(this);
+        schedule();
+    }
+
+    /**
+     * stops watching, a run that is already in progress still delivers
+     */
+    public void stop() {
+        started = false;
+        datasource.removeChangeListener(this);
+    }
+
+    @Override
+    public void onChange(Datasource<?> datasource, Operation operation, long[] ids) {
+        schedule();
+    }
+
+    private void schedule() {
+        if (started && pending.compareAndSet(false, true)) {
+            executor.execute(refresh);
+        }
+    }
+
+    private synchronized void run() {
+        pending.set(false);
+        final List<T> result;
+        try {
+            result = query.list(datasource);
+        } catch (final RuntimeException e) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    observer.onError(e);
+                }
+            });
+            return;
+        }
+
+        final Diff<T> diff = key == null ? null : diff(previous, result);
+        boolean first = previous == null;
+        previous = result;
+        if (!first && diff != null && diff.isEmpty()) {
+            return;
+        }
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                observer.onResult(result, diff);
+            }
+        });
+    }
+
+    private void deliver(Runnable delivery) {
+        if (handler == null) {
+            delivery.run();
+        } else {
+            handler.post(delivery);
+        }
+    }
+
+    private Diff<T> diff(List<T> before, List<T> after) {
+        if (before == null) {
+            return new Diff<T>(after, Collections.<T>emptyList(), Collections.<T>emptyList());
+        }
+        TableMetaData metaData = datasource.getMetaData();
+        HashMap<Long, T> old = new HashMap<Long, T>(before.size() * 2);
+        for (T t : before) {
+            old.put(key.getLong(t), t);
+        }
+        ArrayList<T> added = new ArrayList<T>();
+        ArrayList<T> changed = new ArrayList<T>();
+        for (T t : after) {
+            T o = old.remove(key.getLong(t));
+            if (o == null) {
+                added.add(t);
+            } else if (!metaData.sameValues(o, t)) {
+                changed.add(t);
+            }
+        }
+        return new Diff<T>(added, new ArrayList<T>(old.values()), changed);
+    }
+}
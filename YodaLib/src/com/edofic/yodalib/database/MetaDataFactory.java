@@ -15,25 +15,120 @@
 
 package com.edofic.yodalib.database;
 
-import java.util.HashMap;
-import java.util.Map;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * User: andraz
  * Date: 4/28/12
  * Time: 1:01 PM
  * Static factory of meta data for classes with internal pool for caching
+ * Prefers mappers generated by the annotation processor and falls back to reflection.
+ * Safe to use from multiple threads, meta data of a class is built once and concurrent
+ * first requests wait for the thread that builds it.
  */
 public class MetaDataFactory {
-    private static final Map<Class, TableMetaData> data = new HashMap<Class, TableMetaData>();
+    private static final ConcurrentHashMap<Class, FutureTask<TableMetaData>> data =
+            new ConcurrentHashMap<Class, FutureTask<TableMetaData>>();
+
+    public static TableMetaData get(final Class c) {
+        FutureTask<TableMetaData> task = data.get(c);
+        if (task == null) {
+            FutureTask<TableMetaData> created = new FutureTask<TableMetaData>(new Callable<TableMetaData>() {
+                @Override
+                public TableMetaData call() {
+                    return new TableMetaData(c, findMapper(c));
+                }
+            });
+            task = data.putIfAbsent(c, created);
+            if (task == null) {
+                task = created;
+                created.run();
+            }
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            //don't cache failures, the next call throws again
+            data.remove(c, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * builds meta data for classes now, so the first query doesn't pay for reflection
+     *
+     * @param classes annotated classes
+     */
+    public static void warmup(Class... classes) {
+        for (Class c : classes) {
+            get(c);
+        }
+    }
+
+    /**
+     * builds meta data for classes on a background thread
+     * call it early (e.g. Application.onCreate) to get reflection off the ui thread
+     *
+     * @param classes annotated classes
+     * @return started thread, join it if you need to wait
+     */
+    public static Thread warmupInBackground(final Class... classes) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    warmup(classes);
+                } catch (RuntimeException e) {
+                    //the first real use throws the same exception where it can be handled
+                    Log.w(MetaDataFactory.class.getName(), "Building meta data failed", e);
+                }
+            }
+        }, "yodalib-warmup");
+        thread.start();
+        return thread;
+    }
 
-    public static TableMetaData get(Class c) {
-        TableMetaData t = data.get(c);
-        if (t == null) {
-            t = new TableMetaData(c);
-            data.put(c, t);
+    /**
+     * looks up the mapper generated for c
+     *
+     * @param c annotated class
+     * @return mapper instance or null if none was generated
+     */
+    static RowMapper findMapper(Class c) {
+        try {
+            Class mapperClass = Class.forName(c.getName() + RowMapper.SUFFIX, true, c.getClassLoader());
+            return (RowMapper) mapperClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InstantiationException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
         }
-        return t;
     }
 
     private MetaDataFactory() {
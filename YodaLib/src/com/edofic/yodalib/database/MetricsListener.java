@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Notified after a datasource ran a query or a write. Bulk writes are reported once,
+ * under the sql of their first statement.
+ * Called on the querying thread, so return quickly.
+ * Only consulted when registered, an uninstrumented datasource doesn't read the clock.
+ */
+public interface MetricsListener {
+    /**
+     * @param datasource   datasource that ran the query, its table is datasource.getMetaData().getTableName()
+     * @param sql          query shape: sql with ? placeholders, arguments are not included
+     * @param rows         number of rows returned, or affected by a write
+     * @param queryNanos   time spent in sqlite, stepping the cursor included
+     * @param mappingNanos time spent turning rows into objects, 0 for writes
+     */
+    public void onQuery(Datasource<?> datasource, String sql, int rows, long queryNanos, long mappingNanos);
+}
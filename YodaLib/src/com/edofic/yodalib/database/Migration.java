@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * User supplied step of a schema upgrade.
+ * Runs when upgrading from a version lower than getVersion() to getVersion() or higher,
+ * after missing tables and columns were added and before indices are created.
+ * Use it for anything that can't be derived from annotations - renames, data conversion...
+ */
+public abstract class Migration {
+    private final int version;
+
+    /**
+     * @param version database version this step upgrades to
+     */
+    protected Migration(int version) {
+        this.version = version;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * performs the step, runs inside the upgrade transaction
+     *
+     * @param db database being upgraded
+     */
+    public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a List field as the children of this row in another table.
+ * Children are rows of target whose foreign key column equals this table's integer primary key.
+ * The field is not a column, fill it with Datasource.loadRelation.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface OneToMany {
+    /**
+     * class of the children (mandatory)
+     *
+     * @return child class
+     */
+    public Class target();
+
+    /**
+     * column in the child table referencing this table (mandatory)
+     *
+     * @return foreign key column name
+     */
+    public String foreignKey();
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.Cursor;
+
+/**
+ * Mapping of cursor columns to table columns, resolved once per query.
+ * Cursor columns that don't belong to the table are ignored
+ * and fields without a cursor column are left at their defaults.
+ */
+class Projection {
+    final ColumnMetaData[] columns;
+    final int[] indices;
+
+    private Projection(ColumnMetaData[] columns, int[] indices) {
+        this.columns = columns;
+        this.indices = indices;
+    }
+
+    /**
+     * @param metaData table meta data
+     * @param cursor   query result
+     * @return projection or null if cursor has exactly the table columns in metadata order
+     */
+    static Projection resolve(TableMetaData metaData, Cursor cursor) {
+        String[] names = cursor.getColumnNames();
+        String[] all = metaData.getColumnNames();
+        boolean complete = names.length == all.length;
+        ColumnMetaData[] found = new ColumnMetaData[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            found[i] = metaData.getColumn(names[i]);
+            if (found[i] != null) {
+                count++;
+            }
+            complete = complete && names[i].equals(all[i]);
+        }
+        if (complete) {
+            return null;
+        }
+
+        ColumnMetaData[] columns = new ColumnMetaData[count];
+        int[] indices = new int[count];
+        int j = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != null) {
+                columns[j] = found[i];
+                indices[j] = i;
+                j++;
+            }
+        }
+        return new Projection(columns, indices);
+    }
+}
@@ -27,4 +27,12 @@ interface Proxy {
     public Context getContext();
 
     public SQLiteDatabase getWritableDatabase();
+
+    /**
+     * gets a connection for reading, must be returned with releaseReadableDatabase
+     * may be the writable connection if no read connections are configured
+     */
+    public SQLiteDatabase acquireReadableDatabase();
+
+    public void releaseReadableDatabase(SQLiteDatabase db);
 }
@@ -15,7 +15,7 @@
 
 package com.edofic.yodalib.database;
 
-import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -24,27 +24,353 @@ import java.util.List;
  * User: andraz
  * Date: 5/18/12
  * Time: 9:56 AM
+ * Either pass raw clauses to execute, or build the query fluently and run it with list/iterate:
+ * <pre>
+ * Query&lt;Item&gt; q = new Query&lt;Item&gt;(Item.class)
+ *         .where("category").eq("books").and("price").lt(10)
+ *         .orderBy("price", false).limit(20);
+ * List&lt;Item&gt; cheap = q.list(datasource);
+ * List&lt;Item&gt; cheapMusic = q.bind("music", 10).list(datasource);
+ * </pre>
+ * Columns are validated when the query is built, values always go to bind arguments
+ * and are converted the same way their column is stored (type converters included).
+ * A built query is a compiled shape: its sql is built once per datasource and shared by
+ * every query of the same shape, rebinding values reuses it as is. Once a query is bound or run
+ * only bind can change it.
+ * Conditions follow sqlite precedence (and binds tighter than or).
  */
 public class Query<T> {
     private TableMetaData metaData;
+    private String[] projection;
+    private final StringBuilder where = new StringBuilder();
+    private final ArrayList<Object> args = new ArrayList<Object>();
+    private final ArrayList<ColumnMetaData> argColumns = new ArrayList<ColumnMetaData>();
+    private String selection;
+    private Object[] selectionArgs;
+    private String orderBy;
+    private String limit;
+    private boolean distinct;
+    private String shape;
+    private boolean bound;
+    private boolean compiled;
 
     public Query(Class c) {
         metaData = MetaDataFactory.get(c);
     }
 
+    /**
+     * limits fetched columns, other fields of results are left at their defaults
+     * used when execute or iterate is called without columns
+     *
+     * @param columns column names
+     * @return this query
+     */
+    public Query<T> select(String... columns) {
+        checkBuilding();
+        for (String column : columns) {
+            checkColumn(column);
+        }
+        projection = columns.length == 0 ? null : columns;
+        return this;
+    }
+
+    /**
+     * starts the where clause
+     *
+     * @param column column name
+     * @return condition to complete with an operator
+     */
+    public Condition where(String column) {
+        if (where.length() > 0) {
+            throw new IllegalStateException("where clause already started, use and/or");
+        }
+        return new Condition(column, "");
+    }
+
+    public Condition and(String column) {
+        return next(column, " and ");
+    }
+
+    public Condition or(String column) {
+        return next(column, " or ");
+    }
+
+    private Condition next(String column, String connector) {
+        if (where.length() == 0) {
+            throw new IllegalStateException("start where clause with where");
+        }
+        return new Condition(column, connector);
+    }
+
+    /**
+     * appends column to order by clause, can be called multiple times
+     *
+     * @param column     column name
+     * @param descending order direction
+     * @return this query
+     */
+    public Query<T> orderBy(String column, boolean descending) {
+        checkBuilding();
+        checkColumn(column);
+        String term = descending ? column + " desc" : column;
+        orderBy = orderBy == null ? term : orderBy + ", " + term;
+        return this;
+    }
+
+    public Query<T> limit(int limit) {
+        checkBuilding();
+        this.limit = Integer.toString(limit);
+        return this;
+    }
+
+    public Query<T> distinct() {
+        checkBuilding();
+        distinct = true;
+        return this;
+    }
+
+    /**
+     * replaces values of all conditions, in the order they were added
+     * in(...) conditions take as many values as they were built with
+     * the query can only be rebound after this
+     *
+     * @param values new values
+     * @return this query
+     */
+    public Query<T> bind(Object... values) {
+        if (values.length != args.size()) {
+            throw new IllegalArgumentException("query has " + args.size() + " arguments, got " + values.length);
+        }
+        Object[] bound = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bound[i] = toArg(argColumns.get(i), values[i]);
+        }
+        selectionArgs = bound;
+        this.bound = true;
+        return this;
+    }
+
+    /**
+     * runs the built query
+     *
+     * @param datasource datasource for T
+     * @return matching elements
+     */
+    public List<T> list(Datasource<T> datasource) {
+        compile();
+        return datasource.list(sql(datasource), selectionArgs);
+    }
+
+    /**
+     * runs the built query lazily
+     *
+     * @param datasource datasource for T
+     * @param reuse      fill and return the same instance for every row
+     * @return iterator over results, close it if you stop early
+     */
+    public CursorIterator<T> iterate(Datasource<T> datasource, boolean reuse) {
+        compile();
+        return datasource.cursorIterator(sql(datasource), selectionArgs, reuse);
+    }
+
+    /**
+     * @param column column name
+     * @return true if results of this query have the column filled
+     */
+    boolean selects(String column) {
+        if (projection == null) {
+            return true;
+        }
+        for (String selected : projection) {
+            if (selected.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return where clause of the built query, null if there are no conditions
+     */
+    public String getSelection() {
+        compile();
+        return selection;
+    }
+
+    /**
+     * @return bound values of the built query in their stored form: String, Long, Double or byte[]
+     */
+    public Object[] getSelectionArgs() {
+        compile();
+        return selectionArgs;
+    }
+
+    private void compile() {
+        compiled = true;
+        if (selection == null && where.length() > 0) {
+            selection = where.toString();
+        }
+        if (selectionArgs == null) {
+            selectionArgs = args.toArray();
+        }
+    }
+
+    private String sql(Datasource<T> datasource) {
+        String[] columns = projection == null ? metaData.getColumnNames() : projection;
+        if (shape == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(distinct).append('|');
+            for (String column : columns) {
+                sb.append(column).append(',');
+            }
+            sb.append('|').append(selection).append('|').append(orderBy).append('|').append(limit);
+            shape = sb.toString();
+        }
+        return datasource.selectSql(shape, distinct, columns, selection, orderBy, limit);
+    }
+
+    private void add(String condition, ColumnMetaData column, Object[] values) {
+        checkBuilding();
+        where.append(condition);
+        for (Object value : values) {
+            args.add(toArg(column, value));
+            argColumns.add(column);
+        }
+        selectionArgs = null;
+    }
+
+    /**
+     * the shape is fixed once the query is bound or run
+     */
+    private void checkBuilding() {
+        if (bound) {
+            throw new IllegalStateException("values were already bound, build the query before bind");
+        }
+        if (compiled) {
+            throw new IllegalStateException("query was already run, build a new one or use bind");
+        }
+    }
+
+    private void checkColumn(String column) {
+        if (metaData.getColumn(column) == null) {
+            throw new IllegalArgumentException("no column " + column + " in " + metaData.getTableName());
+        }
+    }
+
+    /**
+     * converts value to bind argument the same way the column is stored
+     * null column means a raw text argument (like patterns)
+     */
+    private static Object toArg(ColumnMetaData column, Object value) {
+        if (column == null) {
+            if (value == null) {
+                throw new IllegalArgumentException("null can't be bound, use isNull");
+            }
+            return value.toString();
+        }
+        return column.valueToArg(value);
+    }
+
+    /**
+     * incomplete condition on one column, complete it with an operator
+     */
+    public class Condition {
+        private final String column;
+        private final ColumnMetaData meta;
+        private final String connector;
+
+        private Condition(String column, String connector) {
+            checkColumn(column);
+            this.column = column;
+            this.meta = metaData.getColumn(column);
+            this.connector = connector;
+        }
+
+        public Query<T> eq(Object value) {
+            return compare(" = ?", value);
+        }
+
+        public Query<T> ne(Object value) {
+            return compare(" != ?", value);
+        }
+
+        public Query<T> lt(Object value) {
+            return compare(" < ?", value);
+        }
+
+        public Query<T> le(Object value) {
+            return compare(" <= ?", value);
+        }
+
+        public Query<T> gt(Object value) {
+            return compare(" > ?", value);
+        }
+
+        public Query<T> ge(Object value) {
+            return compare(" >= ?", value);
+        }
+
+        public Query<T> like(String pattern) {
+            add(connector + column + " like ?", null, new Object[]{pattern});
+            return Query.this;
+        }
+
+        public Query<T> isNull() {
+            return compare(" is null");
+        }
+
+        public Query<T> isNotNull() {
+            return compare(" is not null");
+        }
+
+        public Query<T> in(Object... values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("in needs at least one value");
+            }
+            StringBuilder sb = new StringBuilder(" in (?");
+            for (int i = 1; i < values.length; i++) {
+                sb.append(", ?");
+            }
+            sb.append(")");
+            return compare(sb.toString(), values);
+        }
+
+        private Query<T> compare(String operator, Object... values) {
+            add(connector + column + operator, meta, values);
+            return Query.this;
+        }
+    }
+
+    @SuppressWarnings("unchecked") //datasource is for T
     public List<T> execute(Datasource datasource, boolean distinct, String[] columns, String selection, String groupBy,
                            String having, String orderBy, String limit) {
-        Cursor cursor = datasource.query(distinct, columns, selection, groupBy, having, orderBy, limit);
-        cursor.moveToFirst();
-        ArrayList<T> items = new ArrayList<T>();
-        while (!cursor.isAfterLast()) {
-            //noinspection unchecked
-            //cursor to object generates object from constructor
-            //of T, so we are in fact type safe
-            items.add((T) metaData.cursorToObject(cursor));
-            cursor.moveToNext();
-        }
-        cursor.close();
-        return items;
+        return datasource.list(distinct, columns == null ? projection : columns, selection, null, groupBy, having, orderBy, limit);
+    }
+
+    /**
+     * same as execute but maps rows lazily
+     *
+     * @return iterator over results, close it if you stop early
+     */
+    public CursorIterator<T> iterate(Datasource datasource, boolean distinct, String[] columns, String selection,
+                                     String groupBy, String having, String orderBy, String limit) {
+        return iterate(datasource, distinct, columns, selection, groupBy, having, orderBy, limit, false);
+    }
+
+    /**
+     * same as execute but maps rows lazily
+     *
+     * @param reuse fill and return the same instance for every row
+     * @return iterator over results, close it if you stop early
+     */
+    @SuppressWarnings("unchecked") //datasource is for T
+    public CursorIterator<T> iterate(Datasource datasource, boolean distinct, String[] columns, String selection,
+                                     String groupBy, String having, String orderBy, String limit, boolean reuse) {
+        if (columns == null) {
+            columns = projection == null ? metaData.getColumnNames() : projection;
+        }
+        String sql = SQLiteQueryBuilder.buildQueryString(distinct, metaData.getTableName(), columns, selection,
+                groupBy, having, orderBy, limit);
+        return datasource.cursorIterator(sql, null, reuse);
     }
 }
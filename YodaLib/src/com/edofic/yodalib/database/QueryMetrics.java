@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MetricsListener that aggregates latency histograms, row counts and mapping time
+ * per table and per query shape. Register one instance with any number of datasources.
+ * Shapes built from literal values instead of ? placeholders are all distinct,
+ * so their number is bounded and the rest is counted under OTHER_SHAPES.
+ */
+public class QueryMetrics implements MetricsListener {
+    public static final String OTHER_SHAPES = "(other)";
+
+    /**
+     * Counters for one table or shape. Latencies go into power of two microsecond buckets.
+     */
+    public static class Stats {
+        private static final int BUCKETS = 32;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long rows;
+        private long queryNanos;
+        private long mappingNanos;
+        private long maxNanos;
+
+        synchronized void record(int rows, long queryNanos, long mappingNanos) {
+            long total = queryNanos + mappingNanos;
+            count++;
+            this.rows += rows;
+            this.queryNanos += queryNanos;
+            this.mappingNanos += mappingNanos;
+            maxNanos = Math.max(maxNanos, total);
+            buckets[bucket(total)]++;
+        }
+
+        /**
+         * bucket 0 holds latencies under 1us, bucket i under 2^i us
+         */
+        private static int bucket(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        public synchronized long getQueryNanos() {
+            return queryNanos;
+        }
+
+        public synchronized long getMappingNanos() {
+            return mappingNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return upper bound of the bucket containing the percentile in nanoseconds, 0 if nothing was recorded
+         */
+        public synchronized long getPercentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return Math.min((1L << i) * 1000, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return count + " queries, " + rows + " rows, query " + queryNanos / 1000000 + "ms, mapping "
+                    + mappingNanos / 1000000 + "ms, p50 " + getPercentileNanos(50) / 1000 + "us, p99 "
+                    + getPercentileNanos(99) / 1000 + "us, max " + maxNanos / 1000 + "us";
+        }
+    }
+
+    private final int maxShapes;
+    private final ConcurrentHashMap<String, Stats> tables = new ConcurrentHashMap<String, Stats>();
+    private final ConcurrentHashMap<String, Stats> shapes = new ConcurrentHashMap<String, Stats>();
+
+    public QueryMetrics() {
+        this(256);
+    }
+
+    /**
+     * @param maxShapes number of distinct query shapes tracked separately
+     */
+    public QueryMetrics(int maxShapes) {
+        if (maxShapes <= 0) {
+            throw new IllegalArgumentException("maxShapes must be positive");
+        }
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public void onQuery(Datasource<?> datasource, String sql, int rows, long queryNanos, long mappingNanos) {
+        stats(tables, datasource.getMetaData().getTableName()).record(rows, queryNanos, mappingNanos);
+        if (!shapes.containsKey(sql) && shapes.size() >= maxShapes) {
+            sql = OTHER_SHAPES;
+        }
+        stats(shapes, sql).record(rows, queryNanos, mappingNanos);
+    }
+
+    private static Stats stats(ConcurrentHashMap<String, Stats> map, String key) {
+        Stats stats = map.get(key);
+        if (stats == null) {
+            stats = new Stats();
+            Stats previous = map.putIfAbsent(key, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return live view of stats by table name
+     */
+    public Map<String, Stats> getTableStats() {
+        return Collections.unmodifiableMap(tables);
+    }
+
+    /**
+     * @return live view of stats by query shape
+     */
+    public Map<String, Stats> getShapeStats() {
+        return Collections.unmodifiableMap(shapes);
+    }
+
+    public void reset() {
+        tables.clear();
+        shapes.clear();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Bounded pool of read only connections to one database file.
+ * Connections are opened lazily. acquire never waits: when all are in use it returns null and
+ * the caller reads on the writable connection, so cursors held open can't starve other reads.
+ * Only useful with write ahead logging, otherwise readers and the writer lock each other out.
+ */
+class ReaderPool {
+    private final String path;
+    private final int maxSize;
+    private final int cacheSize;
+    private final ConcurrentLinkedQueue<SQLiteDatabase> idle = new ConcurrentLinkedQueue<SQLiteDatabase>();
+    private final ArrayList<SQLiteDatabase> opened = new ArrayList<SQLiteDatabase>();
+    private volatile boolean closed;
+
+    ReaderPool(String path, int maxSize, int cacheSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return idle or newly opened connection, null if all maxSize connections are in use
+     */
+    SQLiteDatabase acquire() {
+        if (closed) {
+            throw new SQLiteException("reader pool is closed");
+        }
+        SQLiteDatabase db = idle.poll();
+        if (db != null) {
+            return db;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new SQLiteException("reader pool is closed");
+            }
+            if (opened.size() < maxSize) {
+                db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+                if (cacheSize != 0) {
+                    db.execSQL("PRAGMA cache_size = " + cacheSize);
+                }
+                opened.add(db);
+                return db;
+            }
+        }
+        return idle.poll();
+    }
+
+    void release(SQLiteDatabase db) {
+        if (!closed) {
+            idle.offer(db);
+        }
+    }
+
+    boolean owns(SQLiteDatabase db) {
+        synchronized (this) {
+            return opened.contains(db);
+        }
+    }
+
+    /**
+     * closes all connections, connections in use are closed too so call this when idle
+     */
+    synchronized void close() {
+        closed = true;
+        for (SQLiteDatabase db : opened) {
+            db.close();
+        }
+        opened.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Meta data about a relation field
+ * Target meta data is looked up lazily, so tables may reference each other
+ */
+class RelationMetaData {
+    private final Field field;
+    private final boolean toMany;
+    private final Class target;
+    private final String foreignKey;
+
+    RelationMetaData(Field field, boolean toMany, Class target, String foreignKey) {
+        this.field = field;
+        this.toMany = toMany;
+        this.target = target;
+        this.foreignKey = foreignKey;
+        this.field.setAccessible(true);
+    }
+
+    static RelationMetaData of(Field field) {
+        OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        if (oneToMany != null) {
+            if (!field.getType().isAssignableFrom(List.class)) {
+                throw new IllegalArgumentException("one to many field " + field.getName() + " must be a List");
+            }
+            return new RelationMetaData(field, true, oneToMany.target(), oneToMany.foreignKey());
+        }
+        ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+        if (manyToOne != null) {
+            return new RelationMetaData(field, false, field.getType(), manyToOne.foreignKey());
+        }
+        return null;
+    }
+
+    public String getName() {
+        return field.getName();
+    }
+
+    /**
+     * @return true for one to many, false for many to one
+     */
+    public boolean isToMany() {
+        return toMany;
+    }
+
+    public Class getTarget() {
+        return target;
+    }
+
+    /**
+     * @return foreign key column, in target table for one to many and in this table for many to one
+     */
+    public String getForeignKey() {
+        return foreignKey;
+    }
+
+    void set(Object o, Object value) {
+        try {
+            field.set(o, value);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("illegal acces should not be happening");
+        }
+    }
+}
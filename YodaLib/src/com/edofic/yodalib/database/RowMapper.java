@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Reflection free mapping between rows and objects of one table.
+ * Implementations are generated at compile time by the YodaLib annotation processor
+ * as {@code <binary class name>$$RowMapper} and picked up by MetaDataFactory.
+ * Column order is the same as in TableMetaData.
+ */
+public interface RowMapper<T> {
+    /**
+     * suffix appended to binary name of the table class to get the mapper class
+     */
+    public static final String SUFFIX = "$$RowMapper";
+
+    /**
+     * @return new empty instance of T
+     */
+    public T newInstance();
+
+    /**
+     * fills all columns of an object from current cursor row
+     *
+     * @param cursor cursor positioned on a row, columns in metadata order
+     * @param t      object to fill
+     */
+    public void fill(Cursor cursor, T t);
+
+    /**
+     * binds all non autoincrement columns to a statement compiled from TableMetaData.getInsertSql()
+     *
+     * @param statement compiled insert statement
+     * @param t         object to insert
+     */
+    public void bindInsert(SQLiteStatement statement, T t);
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled statements keyed by their sql.
+ * Statements are not thread safe so hold the cache's lock while binding and executing:
+ * <pre>
+ * synchronized (cache) {
+ *     SQLiteStatement s = cache.get(db, sql);
+ *     ...
+ * }
+ * </pre>
+ * Evicted statements are closed.
+ */
+class StatementCache {
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+
+    StatementCache(final int maxSize) {
+        statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * gets compiled statement for sql, compiling it on first use
+     * bindings are cleared
+     *
+     * @param db  database to compile on
+     * @param sql statement sql
+     * @return compiled statement
+     */
+    synchronized SQLiteStatement get(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+        return statement;
+    }
+
+    /**
+     * closes all cached statements
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    /**
+     * binds a value by its type the same way ContentValues values are stored
+     *
+     * @param program  statement to bind to
+     * @param position 1-based position of the argument
+     * @param value    value to bind, may be null
+     */
+    static void bindValue(SQLiteProgram program, int position, Object value) {
+        if (value == null) {
+            program.bindNull(position);
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(position, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            program.bindLong(position, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(position, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(position, (byte[]) value);
+        } else {
+            program.bindString(position, value.toString());
+        }
+    }
+
+    /**
+     * binds arguments by their type, see bindValue
+     *
+     * @param program statement to bind to
+     * @param start   1-based position of the first argument
+     * @param args    arguments, may be null
+     */
+    static void bindAll(SQLiteProgram program, int start, Object[] args) {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            bindValue(program, start + i, args[i]);
+        }
+    }
+}
@@ -47,4 +47,44 @@ public @interface Table {
      * @return database version
      */
     public int version() default 1;
+
+    /**
+     * indices spanning one or more columns
+     * for single column indices you can also use Column.indexed
+     *
+     * @return index declarations
+     */
+    public Index[] indices() default {};
+
+    /**
+     * toggles write ahead logging for the database of a single table datasource
+     * needs sqlite 3.7 (android 3.0), silently ignored on older versions
+     *
+     * @return enable write ahead logging
+     */
+    public boolean writeAheadLogging() default false;
+
+    /**
+     * value for PRAGMA synchronous (OFF, NORMAL or FULL)
+     * defaults to sqlite's default
+     *
+     * @return synchronous mode
+     */
+    public String synchronous() default "";
+
+    /**
+     * value for PRAGMA cache_size, pages if positive, kibibytes if negative
+     * defaults to sqlite's default
+     *
+     * @return cache size
+     */
+    public int cacheSize() default 0;
+
+    /**
+     * number of read only connections used by get and query
+     * only used with write ahead logging, 0 reads on the writable connection
+     *
+     * @return number of read connections
+     */
+    public int readConnections() default 0;
 }
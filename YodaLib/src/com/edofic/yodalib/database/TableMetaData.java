@@ -16,12 +16,14 @@
 package com.edofic.yodalib.database;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 
 /**
  * User: andraz
@@ -37,17 +39,35 @@ public class TableMetaData {
     private int version;
     private final ArrayList<ColumnMetaData> columns = new ArrayList<ColumnMetaData>();
     private final String[] columnNames;
+    private final HashMap<String, ColumnMetaData> columnsByName = new HashMap<String, ColumnMetaData>();
     private final ArrayList<ColumnMetaData> columnsNoIncrement = new ArrayList<ColumnMetaData>();
     private final ArrayList<ColumnMetaData> columnsAutoincrement = new ArrayList<ColumnMetaData>();
+    private final ArrayList<IndexMetaData> indices = new ArrayList<IndexMetaData>();
+    private final HashMap<String, RelationMetaData> relations = new HashMap<String, RelationMetaData>();
+    private ColumnMetaData primaryKey;
+    private final FullTextMetaData fullText;
+    private final String insertSql;
+    private final String updateSql;
+    private final String upsertSql;
     private Constructor constructor;
+    private final RowMapper mapper;
 
     TableMetaData(Class c) {
+        this(c, null);
+    }
+
+    /**
+     * @param c      annotated class
+     * @param mapper generated mapper for c, or null to use reflection
+     */
+    TableMetaData(Class c, RowMapper mapper) {
         @SuppressWarnings(value = "unchecked")
         Table table = (Table) c.getAnnotation(Table.class);
         if (table == null) {
             throw new IllegalArgumentException("must provide annotated class");
         }
         this.c = c;
+        this.mapper = mapper;
         tableName = table.name();
         if (tableName.equals("")) {
             tableName = c.getSimpleName();
@@ -66,6 +86,9 @@ public class TableMetaData {
             throw new IllegalArgumentException("Provided class does not have a parameterless constructor");
         }
 
+        @SuppressWarnings(value = "unchecked")
+        boolean fullTextTable = c.getAnnotation(FullText.class) != null;
+        ArrayList<ColumnMetaData> fullTextColumns = new ArrayList<ColumnMetaData>();
         Field[] fields = c.getDeclaredFields();
         Arrays.sort(fields, new FieldComparator());
         for (Field f : fields) {
@@ -74,33 +97,310 @@ public class TableMetaData {
             if (column != null) {
                 final ColumnMetaData data = new ColumnMetaData(columns.size(), f);
                 columns.add(data);
+                if (f.getAnnotation(FullText.class) != null) {
+                    if (data.getType() != Type.STRING) {
+                        throw new IllegalArgumentException("full text column " + data.getName() + " of "
+                                + tableName + " must be stored as text");
+                    }
+                    fullTextColumns.add(data);
+                } else if (fullTextTable && data.getType() == Type.STRING) {
+                    fullTextColumns.add(data);
+                }
+                if (column.primaryKey() && primaryKey == null) {
+                    primaryKey = data;
+                }
                 if (column.autoIncrement()) {
                     columnsAutoincrement.add(data);
                 } else {
                     columnsNoIncrement.add(data);
                 }
+            } else {
+                RelationMetaData relation = RelationMetaData.of(f);
+                if (relation != null) {
+                    relations.put(relation.getName(), relation);
+                }
             }
         }
 
         columnNames = new String[columns.size()];
         for (int i = 0; i < columns.size(); i++) {
             columnNames[i] = columns.get(i).getName();
+            columnsByName.put(columnNames[i], columns.get(i));
         }
+
+        for (ColumnMetaData column : columns) {
+            if (column.isIndexed()) {
+                indices.add(new IndexMetaData(tableName, "", new String[]{column.getName()}, column.isUnique()));
+            }
+        }
+        for (RelationMetaData relation : relations.values()) {
+            if (!relation.isToMany()) {
+                ColumnMetaData foreignKey = columnsByName.get(relation.getForeignKey());
+                if (foreignKey == null || foreignKey.getType() != Type.INTEGER) {
+                    throw new IllegalArgumentException("relation " + relation.getName() + " of " + tableName
+                            + " needs integer column " + relation.getForeignKey());
+                }
+            }
+        }
+        for (Index index : table.indices()) {
+            for (String column : index.columns()) {
+                if (!columnsByName.containsKey(column)) {
+                    throw new IllegalArgumentException("index on " + tableName + " refers to unknown column " + column);
+                }
+            }
+            indices.add(new IndexMetaData(tableName, index.name(), index.columns(), index.unique()));
+        }
+
+        if (fullTextTable || !fullTextColumns.isEmpty()) {
+            fullText = new FullTextMetaData(tableName, columnNames, fullTextColumns);
+        } else {
+            fullText = null;
+        }
+
+        insertSql = buildInsertSql();
+        updateSql = buildUpdateSql();
+        upsertSql = buildUpsertSql();
+    }
+
+    private String buildInsertSql() {
+        if (columnsNoIncrement.isEmpty()) {
+            return "insert into " + tableName + " default values";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert into ");
+        sb.append(tableName);
+        sb.append(" (");
+        for (int i = 0; i < columnsNoIncrement.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columnsNoIncrement.get(i).getName());
+        }
+        sb.append(") values (");
+        for (int i = 0; i < columnsNoIncrement.size(); i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        sb.append(")");
+        return sb.toString();
     }
 
     public Object cursorToObject(Cursor cursor) {
-        try {
-            Object o = constructor.newInstance((Object[]) null);
-            for (ColumnMetaData column : columns) {
-                column.set(cursor, o);
+        Object o = newInstance();
+        if (o != null) {
+            fill(cursor, o);
+        }
+        return o;
+    }
+
+    /**
+     * creates object from current cursor row mapping only projected columns
+     *
+     * @param cursor     cursor positioned on a row
+     * @param projection resolved projection or null if cursor has all columns in metadata order
+     * @return new object or null if it can't be constructed
+     */
+    Object cursorToObject(Cursor cursor, Projection projection) {
+        Object o = newInstance();
+        if (o != null) {
+            fill(cursor, o, projection);
+        }
+        return o;
+    }
+
+    /**
+     * @return true if all columns of both objects have the same values
+     */
+    public boolean sameValues(Object a, Object b) {
+        for (ColumnMetaData column : columns) {
+            if (!column.valueEquals(a, b)) {
+                return false;
             }
-            return o;
+        }
+        return true;
+    }
+
+    /**
+     * @return new empty instance of the table class or null if it can't be constructed
+     */
+    public Object newInstance() {
+        if (mapper != null) {
+            return mapper.newInstance();
+        }
+        try {
+            return constructor.newInstance((Object[]) null);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * overwrites all columns of an existing object with values from current cursor row
+     *
+     * @param cursor cursor positioned on a row, columns in metadata order
+     * @param o      object to fill
+     */
+    @SuppressWarnings("unchecked") //mapper was generated for c
+    public void fill(Cursor cursor, Object o) {
+        if (mapper != null) {
+            mapper.fill(cursor, o);
+            return;
+        }
+        for (ColumnMetaData column : columns) {
+            column.set(cursor, o);
+        }
+    }
+
+    private String buildUpsertSql() {
+        if (columns.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert or replace into ");
+        sb.append(tableName);
+        sb.append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            ColumnMetaData column = i < columnsNoIncrement.size() ? columnsNoIncrement.get(i)
+                    : columnsAutoincrement.get(i - columnsNoIncrement.size());
+            sb.append(column.getName());
+        }
+        sb.append(") values (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    private String buildUpdateSql() {
+        if (columnsNoIncrement.isEmpty() || columnsAutoincrement.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("update ");
+        sb.append(tableName);
+        sb.append(" set ");
+        for (int i = 0; i < columnsNoIncrement.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columnsNoIncrement.get(i).getName());
+            sb.append(" = ?");
+        }
+        sb.append(" where ");
+        for (int i = 0; i < columnsAutoincrement.size(); i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            sb.append(columnsAutoincrement.get(i).getName());
+            sb.append(" = ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * overwrites projected columns of an existing object with values from current cursor row
+     *
+     * @param cursor     cursor positioned on a row
+     * @param o          object to fill
+     * @param projection resolved projection or null if cursor has all columns in metadata order
+     */
+    void fill(Cursor cursor, Object o, Projection projection) {
+        if (projection == null) {
+            fill(cursor, o);
+            return;
+        }
+        for (int i = 0; i < projection.columns.length; i++) {
+            projection.columns[i].set(cursor, o, projection.indices[i]);
+        }
+    }
+
+    /**
+     * binds all non autoincrement columns of an object to a statement
+     * compiled from getInsertSql()
+     *
+     * @param statement compiled insert statement
+     * @param o         object to insert
+     */
+    @SuppressWarnings("unchecked") //mapper was generated for c
+    public void bindInsert(SQLiteStatement statement, Object o) {
+        if (mapper != null) {
+            mapper.bindInsert(statement, o);
+            return;
+        }
+        for (int i = 0; i < columnsNoIncrement.size(); i++) {
+            columnsNoIncrement.get(i).bind(statement, i + 1, o);
+        }
+    }
+
+    /**
+     * binds non autoincrement columns followed by autoincrement columns of an object
+     * to a statement compiled from getUpdateSql()
+     *
+     * @param statement compiled update statement
+     * @param o         object to update
+     */
+    public void bindUpdate(SQLiteStatement statement, Object o) {
+        bindInsert(statement, o);
+        int position = columnsNoIncrement.size() + 1;
+        for (ColumnMetaData column : columnsAutoincrement) {
+            column.bind(statement, position++, o);
+        }
+    }
+
+    /**
+     * binds non autoincrement columns followed by autoincrement columns of an object
+     * to a statement compiled from getUpsertSql()
+     * unset autoincrement columns are bound as NULL so the database assigns them
+     *
+     * @param statement compiled upsert statement
+     * @param o         object to insert or replace
+     */
+    public void bindUpsert(SQLiteStatement statement, Object o) {
+        bindInsert(statement, o);
+        int position = columnsNoIncrement.size() + 1;
+        for (ColumnMetaData column : columnsAutoincrement) {
+            if (column.isSet(o)) {
+                column.bind(statement, position, o);
+            } else {
+                statement.bindNull(position);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * @return insert or replace statement for all columns, non autoincrement columns first
+     */
+    public String getUpsertSql() {
+        return upsertSql;
+    }
+
+    /**
+     * @return update statement setting all non autoincrement columns where autoincrement columns match,
+     *         null if table has no such columns
+     */
+    public String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * @return insert statement with placeholders for all non autoincrement columns
+     */
+    public String getInsertSql() {
+        return insertSql;
+    }
+
+    /**
+     * @return true if a generated mapper is used instead of reflection
+     */
+    public boolean hasGeneratedMapper() {
+        return mapper != null;
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -109,6 +409,21 @@ public class TableMetaData {
         return columns;
     }
 
+    /**
+     * @return first column marked as primary key or null if there is none
+     */
+    public ColumnMetaData getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * @param name column name
+     * @return column with that name or null
+     */
+    public ColumnMetaData getColumn(String name) {
+        return columnsByName.get(name);
+    }
+
     public String[] getColumnNames() {
         return columnNames;
     }
@@ -121,6 +436,25 @@ public class TableMetaData {
         return columnsAutoincrement;
     }
 
+    /**
+     * @param field name of a field annotated with OneToMany or ManyToOne
+     * @return relation or null if there is no such relation
+     */
+    RelationMetaData getRelation(String field) {
+        return relations.get(field);
+    }
+
+    public ArrayList<IndexMetaData> getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return full text shadow table or null if no column is annotated with FullText
+     */
+    public FullTextMetaData getFullText() {
+        return fullText;
+    }
+
     public int getVersion() {
         return version;
     }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Binary format of Datasource.exportTo and importFrom
+ * magic, format version, column count, then name and storage type of each column.
+ * Every row starts with ROW and holds one tagged value per column, END closes the stream.
+ * Integers are zigzag varints, reals 8 byte doubles, text utf-8 and blobs raw bytes, both length prefixed.
+ */
+class TableSnapshot {
+    static final int MAGIC = 0x59444142; //YDAB
+    static final int VERSION = 1;
+
+    static final int END = 0;
+    static final int ROW = 1;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_INTEGER = 1;
+    static final int TAG_FLOAT = 2;
+    static final int TAG_STRING = 3;
+    static final int TAG_BLOB = 4;
+
+    private TableSnapshot() {
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static int readLength(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("malformed length " + length);
+        }
+        return (int) length;
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s.getBytes("UTF-8"));
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), "UTF-8");
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Converts field values of type F to a storable type S and back.
+ * S must be a type ColumnMetaData can store directly (primitive wrappers, String, byte[]...).
+ * Register converters globally with TypeConverters.register or per field with Column.converter,
+ * field annotated converters need a public parameterless constructor.
+ * Null values are passed to the converter as well.
+ */
+public interface TypeConverter<F, S> {
+    /**
+     * @return class of values stored in the database
+     */
+    public Class<S> getStorageType();
+
+    public S toStorage(F value);
+
+    public F fromStorage(S value);
+}
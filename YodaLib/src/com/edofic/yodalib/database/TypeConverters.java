@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global registry of converters for field types that can't be stored directly.
+ * Converters are resolved when meta data for a class is built, so register them
+ * before the first datasource for that class is created (e.g. in Application.onCreate).
+ * UUID is registered by default and stored as a 16 byte blob.
+ */
+public class TypeConverters {
+    private static final ConcurrentHashMap<Class, TypeConverter> converters =
+            new ConcurrentHashMap<Class, TypeConverter>();
+
+    static {
+        register(UUID.class, new UuidConverter());
+    }
+
+    /**
+     * registers converter for all fields of a type, replaces previous registration
+     * only used for types without a direct mapping
+     *
+     * @param type      field type
+     * @param converter converter to use
+     */
+    public static <F> void register(Class<F> type, TypeConverter<F, ?> converter) {
+        converters.put(type, converter);
+    }
+
+    static TypeConverter get(Class type) {
+        return converters.get(type);
+    }
+
+    private TypeConverters() {
+    }
+
+    /**
+     * stores UUID as 16 big endian bytes instead of 36 characters of text
+     */
+    public static class UuidConverter implements TypeConverter<UUID, byte[]> {
+        @Override
+        public Class<byte[]> getStorageType() {
+            return byte[].class;
+        }
+
+        @Override
+        public byte[] toStorage(UUID value) {
+            if (value == null) {
+                return null;
+            }
+            byte[] bytes = new byte[16];
+            long msb = value.getMostSignificantBits();
+            long lsb = value.getLeastSignificantBits();
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (msb >>> (56 - 8 * i));
+                bytes[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+            }
+            return bytes;
+        }
+
+        @Override
+        public UUID fromStorage(byte[] value) {
+            if (value == null) {
+                return null;
+            }
+            if (value.length != 16) {
+                throw new IllegalArgumentException("stored UUID must be 16 bytes long");
+            }
+            long msb = 0;
+            long lsb = 0;
+            for (int i = 0; i < 8; i++) {
+                msb = (msb << 8) | (value[i] & 0xff);
+                lsb = (lsb << 8) | (value[8 + i] & 0xff);
+            }
+            return new UUID(msb, lsb);
+        }
+    }
+}
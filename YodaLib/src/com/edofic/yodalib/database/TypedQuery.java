@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+/**
+ * Runs select sql with typed arguments. rawQuery only binds strings, so other arguments
+ * (blobs of UUID columns, numbers) are bound on the query program from a cursor factory.
+ */
+class TypedQuery implements SQLiteDatabase.CursorFactory {
+    private final Object[] args;
+
+    private TypedQuery(Object[] args) {
+        this.args = args;
+    }
+
+    /**
+     * @param db   connection to query
+     * @param sql  select sql with ? placeholders
+     * @param args arguments bound by their type, see StatementCache.bindValue. may be null
+     * @return cursor over results
+     */
+    static Cursor rawQuery(SQLiteDatabase db, String sql, Object[] args) {
+        if (args == null || args instanceof String[]) {
+            return db.rawQuery(sql, (String[]) args);
+        }
+        return db.rawQueryWithFactory(new TypedQuery(args), sql, null, null);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation") //the only constructor on api 7
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        StatementCache.bindAll(query, 1, args);
+        return new SQLiteCursor(db, masterQuery, editTable, query);
+    }
+}
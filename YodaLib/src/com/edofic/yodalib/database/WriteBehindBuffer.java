@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Queue of new rows written by a background thread through insertAll, one transaction per batch.
+ * A batch is written when batchSize rows are pending or maxDelay passed. Producers that find
+ * capacity rows pending write them on their own thread, so memory stays bounded.
+ * A batch that fails is retried row by row, rows that fail on their own are passed to the
+ * listener (or logged) and dropped, so writing never throws at producers for other rows.
+ * Closing is lock free: producers announce themselves in adding before checking closed,
+ * close sets closed and waits until no producer is between the check and the offer.
+ */
+class WriteBehindBuffer<T> implements Runnable {
+    private final Datasource<T> datasource;
+    private final int batchSize;
+    private final int capacity;
+    private final long maxDelayNanos;
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger adding = new AtomicInteger();
+    private final Object flushLock = new Object();
+    private final WriteBehindListener<T> listener;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean closed;
+
+    /**
+     * @param listener notified about rows that couldn't be written, null logs them
+     */
+    WriteBehindBuffer(Datasource<T> datasource, int batchSize, long maxDelayMillis, WriteBehindListener<T> listener) {
+        if (batchSize <= 0 || maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("batch size and delay must be positive");
+        }
+        this.datasource = datasource;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.capacity = batchSize * 4;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        thread = new Thread(this, "yodalib-" + datasource.getMetaData().getTableName() + "-writebehind");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param t row to queue
+     * @return false if the buffer is closed and the row wasn't queued
+     */
+    boolean add(T t) {
+        while (size.get() >= capacity) {
+            flush();
+        }
+        int pending;
+        adding.incrementAndGet();
+        try {
+            if (closed) {
+                return false;
+            }
+            queue.offer(t);
+            pending = size.incrementAndGet();
+        } finally {
+            adding.decrementAndGet();
+        }
+        if (pending >= batchSize) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * writes rows queued before this call on the calling thread
+     *
+     * @return number of rows written, failed rows are not counted
+     */
+    int flush() {
+        synchronized (flushLock) {
+            int pending = size.get();
+            int written = 0;
+            while (written < pending) {
+                ArrayList<T> batch = new ArrayList<T>(Math.min(pending - written, capacity));
+                T t;
+                while (batch.size() < capacity && (t = queue.poll()) != null) {
+                    batch.add(t);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                size.addAndGet(-batch.size());
+                written += write(batch);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * @return number of rows written
+     */
+    private int write(ArrayList<T> batch) {
+        try {
+            datasource.insertAll(batch);
+            return batch.size();
+        } catch (RuntimeException e) {
+            //the transaction was rolled back, find the rows that fail on their own
+            int written = 0;
+            for (T t : batch) {
+                try {
+                    datasource.insertAll(Collections.singletonList(t));
+                    written++;
+                } catch (RuntimeException rowError) {
+                    failed(t, rowError);
+                }
+            }
+            return written;
+        }
+    }
+
+    private void failed(T t, RuntimeException error) {
+        if (listener == null) {
+            Log.e(WriteBehindBuffer.class.getName(), "Error writing row into "
+                    + datasource.getMetaData().getTableName(), error);
+            return;
+        }
+        try {
+            listener.onWriteFailed(datasource, t, error);
+        } catch (RuntimeException e) {
+            Log.e(WriteBehindBuffer.class.getName(), "Write behind listener failed", e);
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        while (running) {
+            if (size.get() < batchSize) {
+                LockSupport.parkNanos(this, maxDelayNanos);
+            }
+            flush();
+        }
+    }
+
+    /**
+     * stops the background thread and writes everything still queued on the calling thread
+     * rows added after this are refused
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while (adding.get() != 0) {
+            Thread.yield();
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Notified about rows write behind couldn't write. A failed batch is retried row by row,
+ * so only rows that fail on their own are reported and the rest of the batch is written.
+ * Called on the thread that wrote the batch, the background thread or one calling insert or flush.
+ */
+public interface WriteBehindListener<T> {
+    /**
+     * @param datasource datasource the row was queued on
+     * @param row        row that was dropped
+     * @param error      why its insert failed
+     */
+    public void onWriteFailed(Datasource<T> datasource, T row, RuntimeException error);
+}
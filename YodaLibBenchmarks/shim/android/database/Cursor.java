@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database;
+
+/**
+ * Subset of the platform interface used by the database package
+ */
+public interface Cursor {
+    int getCount();
+
+    int getPosition();
+
+    boolean moveToPosition(int position);
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean isAfterLast();
+
+    int getColumnCount();
+
+    int getColumnIndex(String columnName);
+
+    int getColumnIndexOrThrow(String columnName);
+
+    String[] getColumnNames();
+
+    boolean isNull(int column);
+
+    long getLong(int column);
+
+    int getInt(int column);
+
+    short getShort(int column);
+
+    double getDouble(int column);
+
+    float getFloat(int column);
+
+    String getString(int column);
+
+    byte[] getBlob(int column);
+
+    void close();
+
+    boolean isClosed();
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database;
+
+/**
+ * Delegates every call to the wrapped cursor
+ */
+public class CursorWrapper implements Cursor {
+    private final Cursor cursor;
+
+    public CursorWrapper(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getCount() {
+        return cursor.getCount();
+    }
+
+    public int getPosition() {
+        return cursor.getPosition();
+    }
+
+    public boolean moveToPosition(int position) {
+        return cursor.moveToPosition(position);
+    }
+
+    public boolean moveToFirst() {
+        return cursor.moveToFirst();
+    }
+
+    public boolean moveToNext() {
+        return cursor.moveToNext();
+    }
+
+    public boolean isAfterLast() {
+        return cursor.isAfterLast();
+    }
+
+    public int getColumnCount() {
+        return cursor.getColumnCount();
+    }
+
+    public int getColumnIndex(String columnName) {
+        return cursor.getColumnIndex(columnName);
+    }
+
+    public int getColumnIndexOrThrow(String columnName) {
+        return cursor.getColumnIndexOrThrow(columnName);
+    }
+
+    public String[] getColumnNames() {
+        return cursor.getColumnNames();
+    }
+
+    public boolean isNull(int column) {
+        return cursor.isNull(column);
+    }
+
+    public long getLong(int column) {
+        return cursor.getLong(column);
+    }
+
+    public int getInt(int column) {
+        return cursor.getInt(column);
+    }
+
+    public short getShort(int column) {
+        return cursor.getShort(column);
+    }
+
+    public double getDouble(int column) {
+        return cursor.getDouble(column);
+    }
+
+    public float getFloat(int column) {
+        return cursor.getFloat(column);
+    }
+
+    public String getString(int column) {
+        return cursor.getString(column);
+    }
+
+    public byte[] getBlob(int column) {
+        return cursor.getBlob(column);
+    }
+
+    public void close() {
+        cursor.close();
+    }
+
+    public boolean isClosed() {
+        return cursor.isClosed();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Cursor over a fully read result set, like a platform cursor whose window holds every row.
+ * Rows are copied out of JDBC up front so mapping cost is measured separately from stepping.
+ */
+public class SQLiteCursor implements Cursor {
+    private String[] columnNames;
+    private final ArrayList<Object[]> rows = new ArrayList<Object[]>();
+    private int position = -1;
+    private boolean closed;
+
+    SQLiteCursor(ResultSet resultSet) throws SQLException {
+        read(resultSet);
+    }
+
+    /**
+     * runs the query with the arguments bound on it and closes it
+     */
+    public SQLiteCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        try {
+            try {
+                if (query.statement.execute()) {
+                    ResultSet resultSet = query.statement.getResultSet();
+                    try {
+                        read(resultSet);
+                    } finally {
+                        resultSet.close();
+                    }
+                } else {
+                    read(null);
+                }
+            } finally {
+                query.close();
+            }
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    private void read(ResultSet resultSet) throws SQLException {
+        if (resultSet == null) {
+            columnNames = new String[0];
+            return;
+        }
+        ResultSetMetaData meta = resultSet.getMetaData();
+        columnNames = new String[meta.getColumnCount()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = meta.getColumnLabel(i + 1);
+        }
+        while (resultSet.next()) {
+            Object[] row = new Object[columnNames.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            rows.add(row);
+        }
+    }
+
+    public int getCount() {
+        return rows.size();
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean moveToPosition(int position) {
+        if (position < -1) {
+            position = -1;
+        } else if (position > rows.size()) {
+            position = rows.size();
+        }
+        this.position = position;
+        return position >= 0 && position < rows.size();
+    }
+
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    public boolean isAfterLast() {
+        return rows.isEmpty() || position >= rows.size();
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    private Object value(int column) {
+        if (position < 0 || position >= rows.size()) {
+            throw new IllegalStateException("cursor is not on a row");
+        }
+        return rows.get(position)[column];
+    }
+
+    public boolean isNull(int column) {
+        return value(column) == null;
+    }
+
+    public long getLong(int column) {
+        Object value = value(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return (long) Double.parseDouble(value.toString());
+    }
+
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    public double getDouble(int column) {
+        Object value = value(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(value.toString());
+    }
+
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    public String getString(int column) {
+        Object value = value(column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return new String((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    public byte[] getBlob(int column) {
+        Object value = value(column);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        throw new SQLiteException("column " + columnNames[column] + " is not a blob");
+    }
+
+    public void close() {
+        closed = true;
+        rows.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Properties;
+
+import org.sqlite.JDBC;
+
+/**
+ * Benchmark stand-in for the platform class running on the native SQLite bundled with sqlite-jdbc.
+ * Transactions nest the way the platform's do: the outermost end commits only if every level
+ * was marked successful.
+ */
+public class SQLiteDatabase {
+    public static final int OPEN_READWRITE = 0x00000000;
+    public static final int OPEN_READONLY = 0x00000001;
+    public static final int NO_LOCALIZED_COLLATORS = 0x00000010;
+    public static final int CREATE_IF_NECESSARY = 0x10000000;
+
+    // sqlite3_open_v2 flags
+    private static final int SQLITE_OPEN_READONLY = 0x1;
+    private static final int SQLITE_OPEN_READWRITE = 0x2;
+    private static final int SQLITE_OPEN_CREATE = 0x4;
+
+    private static final JDBC DRIVER = new JDBC();
+
+    public interface CursorFactory {
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                                SQLiteQuery query);
+    }
+
+    private final String path;
+    private final Connection connection;
+    private final boolean readOnly;
+    private PreparedStatement lastInsertRowId;
+    private int transactionDepth;
+    private boolean transactionSuccessful;
+    private boolean transactionFailed;
+
+    private SQLiteDatabase(String path, int flags) {
+        this.path = path;
+        readOnly = (flags & OPEN_READONLY) != 0;
+        int mode = readOnly ? SQLITE_OPEN_READONLY : SQLITE_OPEN_READWRITE;
+        if ((flags & CREATE_IF_NECESSARY) != 0) {
+            mode |= SQLITE_OPEN_CREATE;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", String.valueOf(mode));
+        try {
+            connection = DRIVER.connect(JDBC.PREFIX + path, properties);
+        } catch (SQLException e) {
+            throw wrap(e, null);
+        }
+    }
+
+    public static SQLiteDatabase openDatabase(String path, CursorFactory factory, int flags) {
+        return new SQLiteDatabase(path, flags);
+    }
+
+    public static SQLiteDatabase openOrCreateDatabase(String path, CursorFactory factory) {
+        return new SQLiteDatabase(path, OPEN_READWRITE | CREATE_IF_NECESSARY);
+    }
+
+    static SQLiteException wrap(SQLException e, String sql) {
+        return new SQLiteException(sql == null ? e.getMessage() : e.getMessage() + ", while compiling: " + sql, e);
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    long lastInsertRowId() {
+        try {
+            if (lastInsertRowId == null) {
+                lastInsertRowId = connection.prepareStatement("select last_insert_rowid()");
+            }
+            ResultSet resultSet = lastInsertRowId.executeQuery();
+            try {
+                resultSet.next();
+                return resultSet.getLong(1);
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw wrap(e, null);
+        }
+    }
+
+    public void beginTransaction() {
+        try {
+            if (transactionDepth == 0) {
+                connection.setAutoCommit(false);
+                transactionFailed = false;
+            }
+        } catch (SQLException e) {
+            throw wrap(e, null);
+        }
+        transactionDepth++;
+        transactionSuccessful = false;
+    }
+
+    public void setTransactionSuccessful() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        transactionSuccessful = true;
+    }
+
+    public void endTransaction() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        if (!transactionSuccessful) {
+            transactionFailed = true;
+        }
+        transactionSuccessful = true;
+        if (--transactionDepth > 0) {
+            return;
+        }
+        try {
+            if (transactionFailed) {
+                connection.rollback();
+            } else {
+                connection.commit();
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw wrap(e, null);
+        }
+    }
+
+    public boolean inTransaction() {
+        return transactionDepth > 0;
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        return new SQLiteStatement(this, sql);
+    }
+
+    public void execSQL(String sql) {
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw wrap(e, sql);
+        }
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        SQLiteStatement statement = compileStatement(sql);
+        try {
+            for (int i = 0; i < bindArgs.length; i++) {
+                bind(statement, i + 1, bindArgs[i]);
+            }
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                if (selectionArgs != null) {
+                    for (int i = 0; i < selectionArgs.length; i++) {
+                        statement.setString(i + 1, selectionArgs[i]);
+                    }
+                }
+                // pragmas and other statements without a result set are valid here too
+                if (!statement.execute()) {
+                    return new SQLiteCursor(null);
+                }
+                ResultSet resultSet = statement.getResultSet();
+                try {
+                    return new SQLiteCursor(resultSet);
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw wrap(e, sql);
+        }
+    }
+
+    /**
+     * like the platform, string arguments are bound first and the factory may bind more
+     */
+    public Cursor rawQueryWithFactory(CursorFactory factory, String sql, String[] selectionArgs, String editTable) {
+        SQLiteQuery query = new SQLiteQuery(this, sql);
+        if (selectionArgs != null) {
+            for (int i = 0; i < selectionArgs.length; i++) {
+                query.bindString(i + 1, selectionArgs[i]);
+            }
+        }
+        SQLiteCursorDriver driver = new SQLiteCursorDriver() {
+        };
+        return factory == null ? new SQLiteCursor(this, driver, editTable, query)
+                : factory.newCursor(this, driver, editTable, query);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        return rawQuery(SQLiteQueryBuilder.buildQueryString(distinct, table, columns, selection,
+                groupBy, having, orderBy, limit), selectionArgs);
+    }
+
+    private static void appendClause(StringBuilder sb, String name, String clause) {
+        if (clause != null && clause.length() > 0) {
+            sb.append(name).append(clause);
+        }
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        ArrayList<Object> args = new ArrayList<Object>();
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        if (values.size() == 0) {
+            sb.append(nullColumnHack).append(") VALUES (NULL)");
+        } else {
+            StringBuilder placeholders = new StringBuilder();
+            for (Map.Entry<String, Object> entry : values.valueSet()) {
+                if (!args.isEmpty()) {
+                    sb.append(", ");
+                    placeholders.append(", ");
+                }
+                sb.append(entry.getKey());
+                placeholders.append('?');
+                args.add(entry.getValue());
+            }
+            sb.append(") VALUES (").append(placeholders).append(')');
+        }
+        SQLiteStatement statement = compileStatement(sb.toString());
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                bind(statement, i + 1, args.get(i));
+            }
+            return statement.executeInsert();
+        } catch (SQLiteException e) {
+            return -1;
+        } finally {
+            statement.close();
+        }
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        ArrayList<Object> args = new ArrayList<Object>();
+        StringBuilder sb = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (!args.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(" = ?");
+            args.add(entry.getValue());
+        }
+        appendClause(sb, " WHERE ", whereClause);
+        return executeUpdate(sb.toString(), args, whereArgs);
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        StringBuilder sb = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sb, " WHERE ", whereClause);
+        return executeUpdate(sb.toString(), new ArrayList<Object>(), whereArgs);
+    }
+
+    private int executeUpdate(String sql, ArrayList<Object> args, String[] whereArgs) {
+        SQLiteStatement statement = compileStatement(sql);
+        try {
+            int position = 1;
+            for (Object arg : args) {
+                bind(statement, position++, arg);
+            }
+            if (whereArgs != null) {
+                for (String arg : whereArgs) {
+                    bind(statement, position++, arg);
+                }
+            }
+            return statement.statement.executeUpdate();
+        } catch (SQLException e) {
+            throw wrap(e, sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void bind(SQLiteProgram program, int position, Object value) {
+        if (value == null) {
+            program.bindNull(position);
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(position, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            program.bindLong(position, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(position, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(position, (byte[]) value);
+        } else {
+            program.bindString(position, value.toString());
+        }
+    }
+
+    public int getVersion() {
+        Cursor cursor = rawQuery("PRAGMA user_version", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    public void setLockingEnabled(boolean lockingEnabled) {
+    }
+
+    public boolean enableWriteAheadLogging() {
+        Cursor cursor = rawQuery("PRAGMA journal_mode = WAL", null);
+        try {
+            return cursor.moveToFirst() && "wal".equalsIgnoreCase(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isOpen() {
+        try {
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw wrap(e, null);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Compiled statement, a thin wrapper over a JDBC prepared statement.
+ * Bind positions are 1-based on both sides.
+ */
+public abstract class SQLiteProgram {
+    final SQLiteDatabase db;
+    final PreparedStatement statement;
+
+    SQLiteProgram(SQLiteDatabase db, String sql) {
+        this.db = db;
+        try {
+            statement = db.connection().prepareStatement(sql);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, sql);
+        }
+    }
+
+    public void bindNull(int index) {
+        try {
+            statement.setNull(index, Types.NULL);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void bindLong(int index, long value) {
+        try {
+            statement.setLong(index, value);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void bindDouble(int index, double value) {
+        try {
+            statement.setDouble(index, value);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void bindString(int index, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            statement.setString(index, value);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            statement.setBytes(index, value);
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void clearBindings() {
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public void close() {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+/**
+ * Only the static sql builder, same output format as the platform's
+ */
+public class SQLiteQueryBuilder {
+    public static String buildQueryString(boolean distinct, String tables, String[] columns, String where,
+                                          String groupBy, String having, String orderBy, String limit) {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        if (distinct) {
+            sb.append("DISTINCT ");
+        }
+        if (columns == null || columns.length == 0) {
+            sb.append("* ");
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(columns[i]);
+            }
+            sb.append(' ');
+        }
+        sb.append("FROM ").append(tables);
+        appendClause(sb, " WHERE ", where);
+        appendClause(sb, " GROUP BY ", groupBy);
+        appendClause(sb, " HAVING ", having);
+        appendClause(sb, " ORDER BY ", orderBy);
+        appendClause(sb, " LIMIT ", limit);
+        return sb.toString();
+    }
+
+    private static void appendClause(StringBuilder sb, String name, String clause) {
+        if (clause != null && clause.length() > 0) {
+            sb.append(name).append(clause);
+        }
+    }
+}
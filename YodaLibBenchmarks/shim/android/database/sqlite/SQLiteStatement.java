@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class SQLiteStatement extends SQLiteProgram {
+    SQLiteStatement(SQLiteDatabase db, String sql) {
+        super(db, sql);
+    }
+
+    public void execute() {
+        try {
+            statement.execute();
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    /**
+     * @return row id of the inserted row or -1 if nothing was inserted
+     */
+    public long executeInsert() {
+        try {
+            if (statement.executeUpdate() == 0) {
+                return -1;
+            }
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+        return db.lastInsertRowId();
+    }
+
+    public long simpleQueryForLong() {
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                if (!resultSet.next()) {
+                    throw new SQLiteDoneException();
+                }
+                return resultSet.getLong(1);
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+
+    public String simpleQueryForString() {
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                if (!resultSet.next()) {
+                    throw new SQLiteDoneException();
+                }
+                return resultSet.getString(1);
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw SQLiteDatabase.wrap(e, null);
+        }
+    }
+}
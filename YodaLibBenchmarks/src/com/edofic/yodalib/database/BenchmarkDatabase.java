@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * Opens a fresh file backed datasource in a temporary directory and deletes it afterwards
+ */
+class BenchmarkDatabase {
+    private final File dir;
+    final Datasource<BenchmarkEntity> datasource;
+
+    BenchmarkDatabase() {
+        File dir;
+        try {
+            dir = File.createTempFile("yodalib", "bench");
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IllegalStateException("can't create " + dir);
+        }
+        this.dir = dir;
+        final File root = dir;
+        datasource = Datasource.create(new Context() {
+            @Override
+            public File getDatabasePath(String name) {
+                return new File(root, name);
+            }
+        }, BenchmarkEntity.class);
+        datasource.open();
+    }
+
+    void populate(int rows) {
+        datasource.clear();
+        BenchmarkEntity[] items = new BenchmarkEntity[rows];
+        for (int i = 0; i < rows; i++) {
+            items[i] = BenchmarkEntity.row(i);
+        }
+        datasource.insertAll(java.util.Arrays.asList(items));
+    }
+
+    void close() {
+        datasource.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+/**
+ * Row shape used by all benchmarks, one column of each common storage class
+ */
+@Table(name = "bench", indices = {@Index(columns = {"grp", "score"})})
+public class BenchmarkEntity {
+    @Column(primaryKey = true, autoIncrement = true, position = 0)
+    public long id;
+    @Column(position = 1, indexed = true)
+    public String name;
+    @Column(position = 2)
+    public int grp;
+    @Column(position = 3)
+    public double score;
+    @Column(position = 4)
+    public boolean active;
+    @Column(position = 5)
+    public byte[] payload;
+
+    public BenchmarkEntity() {
+    }
+
+    static BenchmarkEntity row(int i) {
+        BenchmarkEntity e = new BenchmarkEntity();
+        e.name = "name" + i;
+        e.grp = i % 100;
+        e.score = i * 0.5;
+        e.active = (i & 1) == 0;
+        e.payload = new byte[]{(byte) i, (byte) (i >> 8), (byte) (i >> 16), (byte) (i >> 24)};
+        return e;
+    }
+}
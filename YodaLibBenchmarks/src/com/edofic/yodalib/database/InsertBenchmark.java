@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single inserts (one implicit transaction each) against insertAll (one transaction per batch).
+ * Throughput is rows per second in both cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    private static final int BATCH = 1000;
+
+    private BenchmarkDatabase database;
+    private BenchmarkEntity single;
+    private List<BenchmarkEntity> batch;
+
+    @Setup(Level.Trial)
+    public void open() {
+        database = new BenchmarkDatabase();
+        single = BenchmarkEntity.row(42);
+        batch = new ArrayList<BenchmarkEntity>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(BenchmarkEntity.row(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        database.datasource.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        database.close();
+    }
+
+    @Benchmark
+    public long insert() {
+        single.id = 0;
+        return database.datasource.insert(single);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] insertAll() {
+        for (BenchmarkEntity e : batch) {
+            e.id = 0;
+        }
+        return database.datasource.insertAll(batch);
+    }
+}
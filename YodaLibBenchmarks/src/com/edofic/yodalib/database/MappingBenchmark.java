@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping without sqlite in the loop: rows come from an already filled cursor that is rewound
+ * for every invocation. "generated" uses the annotation processor's mapper when it was on the
+ * processor path during the build, otherwise it falls back to reflection like "reflection".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+    private static final int ROWS = 1000;
+
+    @Param({"reflection", "generated"})
+    public String mapper;
+
+    private BenchmarkDatabase database;
+    private TableMetaData metaData;
+    private Cursor cursor;
+    private ColumnMetaData[] columns;
+    private BenchmarkEntity target;
+    private ContentValues values;
+
+    @Setup(Level.Trial)
+    public void open() {
+        database = new BenchmarkDatabase();
+        database.populate(ROWS);
+        metaData = new TableMetaData(BenchmarkEntity.class,
+                "generated".equals(mapper) ? MetaDataFactory.findMapper(BenchmarkEntity.class) : null);
+        cursor = database.datasource.query(false, null, null, null, null, null, null);
+        columns = metaData.getColumns().toArray(new ColumnMetaData[0]);
+        target = new BenchmarkEntity();
+        values = new ContentValues();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        cursor.close();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void cursorToObject(Blackhole bh) {
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            bh.consume(metaData.cursorToObject(cursor));
+        }
+    }
+
+    @Benchmark
+    public void columnSet() {
+        cursor.moveToFirst();
+        for (ColumnMetaData column : columns) {
+            column.set(cursor, target);
+        }
+    }
+
+    @Benchmark
+    public ContentValues columnGet() {
+        for (ColumnMetaData column : columns) {
+            column.get(values, target);
+        }
+        return values;
+    }
+}
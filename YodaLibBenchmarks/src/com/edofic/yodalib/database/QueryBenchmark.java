@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from a populated table: full-table mapping, indexed where-clause lookups and primary key gets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    @Param({"10000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private String[] nameArgs;
+    private String[] groupArgs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void open() {
+        database = new BenchmarkDatabase();
+        database.populate(rows);
+        nameArgs = new String[1];
+        groupArgs = new String[]{"7", "100"};
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        database.close();
+    }
+
+    private int nextRow() {
+        next = (next + 7919) % rows;
+        return next;
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getAll() {
+        return database.datasource.getAll();
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getByIndexedName() {
+        nameArgs[0] = "name" + nextRow();
+        return database.datasource.get("name = ?", nameArgs);
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getByCompositeIndex() {
+        return database.datasource.get("grp = ? and score < ?", groupArgs);
+    }
+
+    @Benchmark
+    public BenchmarkEntity getById() {
+        return database.datasource.getById(nextRow() + 1);
+    }
+}
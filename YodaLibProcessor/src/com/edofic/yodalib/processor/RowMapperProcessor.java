@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012 Andraz Bajt
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.edofic.yodalib.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a RowMapper for every class annotated with Table.
+ * Mappers access fields directly so no reflection or boxing happens when mapping rows.
+ * Classes that can't be mapped directly (private fields or constructor, non static inner
+ * classes, unsupported column types, converters) are skipped and fall back to reflection at runtime.
+ * Columns are ordered exactly like TableMetaData orders them: by position, then by field name.
+ */
+@SupportedAnnotationTypes(RowMapperProcessor.TABLE)
+public class RowMapperProcessor extends AbstractProcessor {
+    static final String PACKAGE = "com.edofic.yodalib.database";
+    static final String TABLE = PACKAGE + ".Table";
+    static final String COLUMN = PACKAGE + ".Column";
+    static final String CONVERTER = PACKAGE + ".TypeConverter";
+    static final String SUFFIX = "$$RowMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement table = processingEnv.getElementUtils().getTypeElement(TABLE);
+        if (table == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(table)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            String reason = checkClass(type);
+            List<ColumnField> columns = new ArrayList<ColumnField>();
+            if (reason == null) {
+                reason = collectColumns(type, columns);
+            }
+            if (reason != null) {
+                note(type, "no row mapper generated for " + type.getQualifiedName() + ", " + reason);
+                continue;
+            }
+            try {
+                write(type, columns);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "could not write row mapper: " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return reason why class can't be mapped directly or null if it can
+     */
+    private String checkClass(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)) {
+            return "class is private or abstract";
+        }
+        for (Element e = type; e.getEnclosingElement().getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (!e.getModifiers().contains(Modifier.STATIC) || e.getModifiers().contains(Modifier.PRIVATE)) {
+                return "inner classes must be static and not private";
+            }
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty()) {
+                return constructor.getModifiers().contains(Modifier.PRIVATE) ? "constructor is private" : null;
+            }
+        }
+        return "no parameterless constructor";
+    }
+
+    /**
+     * @return reason why columns can't be mapped directly or null if they can
+     */
+    private String collectColumns(TypeElement type, List<ColumnField> columns) {
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            AnnotationMirror column = findAnnotation(field, COLUMN);
+            if (column == null) {
+                continue;
+            }
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                    || modifiers.contains(Modifier.STATIC)) {
+                return "field " + field.getSimpleName() + " is private, final or static";
+            }
+            if (!value(column, "converter").toString().equals(CONVERTER)) {
+                return "field " + field.getSimpleName() + " uses a converter";
+            }
+            ColumnKind kind = ColumnKind.of(field.asType());
+            if (kind == null) {
+                return "field " + field.getSimpleName() + " has no direct mapping";
+            }
+            columns.add(new ColumnField(field.getSimpleName().toString(), kind,
+                    (Integer) value(column, "position"), (Boolean) value(column, "autoIncrement")));
+        }
+        Collections.sort(columns, new Comparator<ColumnField>() {
+            @Override
+            public int compare(ColumnField c1, ColumnField c2) {
+                int delta = c1.position - c2.position;
+                if (delta < 0) return -1;
+                if (delta > 0) return +1;
+                return c1.field.compareTo(c2.field);
+            }
+        });
+        return null;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void write(TypeElement type, List<ColumnField> columns) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String typeName = type.getQualifiedName().toString();
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(binaryName + SUFFIX, type);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Generated by " + RowMapperProcessor.class.getName() + ", do not edit");
+            out.println(" */");
+            out.println("public final class " + simpleName + " implements " + PACKAGE + ".RowMapper<" + typeName + "> {");
+            out.println("    @Override");
+            out.println("    public " + typeName + " newInstance() {");
+            out.println("        return new " + typeName + "();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void fill(android.database.Cursor cursor, " + typeName + " t) {");
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnField column = columns.get(i);
+                out.println("        t." + column.field + " = " + column.kind.read("cursor", i) + ";");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void bindInsert(android.database.sqlite.SQLiteStatement statement, " + typeName + " t) {");
+            int position = 1;
+            for (ColumnField column : columns) {
+                if (!column.autoIncrement) {
+                    out.println("        " + column.kind.bind("statement", position++, "t." + column.field));
+                }
+            }
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    private static class ColumnField {
+        final String field;
+        final ColumnKind kind;
+        final int position;
+        final boolean autoIncrement;
+
+        ColumnField(String field, ColumnKind kind, int position, boolean autoIncrement) {
+            this.field = field;
+            this.kind = kind;
+            this.position = position;
+            this.autoIncrement = autoIncrement;
+        }
+    }
+
+    /**
+     * field types with a direct mapping, must match ColumnMetaData
+     * wrapper types, enums and dates are left to reflection
+     */
+    private enum ColumnKind {
+        LONG("getLong", "bindLong"),
+        INT("getInt", "bindLong"),
+        SHORT("getShort", "bindLong"),
+        DOUBLE("getDouble", "bindDouble"),
+        FLOAT("getFloat", "bindDouble"),
+        BYTE("getInt", "bindLong") {
+            @Override
+            String read(String cursor, int index) {
+                return "(byte) " + super.read(cursor, index);
+            }
+        },
+        BOOLEAN("getInt", "bindLong") {
+            @Override
+            String read(String cursor, int index) {
+                return super.read(cursor, index) + " != 0";
+            }
+
+            @Override
+            String bind(String statement, int position, String value) {
+                return super.bind(statement, position, value + " ? 1 : 0");
+            }
+        },
+        STRING("getString", "bindString") {
+            @Override
+            String bind(String statement, int position, String value) {
+                return "if (" + value + " == null) " + statement + ".bindNull(" + position + "); else "
+                        + super.bind(statement, position, value);
+            }
+        },
+        BYTES("getBlob", "bindBlob") {
+            @Override
+            String bind(String statement, int position, String value) {
+                return "if (" + value + " == null) " + statement + ".bindNull(" + position + "); else "
+                        + super.bind(statement, position, value);
+            }
+        };
+
+        private final String getter;
+        private final String binder;
+
+        ColumnKind(String getter, String binder) {
+            this.getter = getter;
+            this.binder = binder;
+        }
+
+        String read(String cursor, int index) {
+            return cursor + "." + getter + "(" + index + ")";
+        }
+
+        String bind(String statement, int position, String value) {
+            return statement + "." + binder + "(" + position + ", " + value + ");";
+        }
+
+        static ColumnKind of(TypeMirror type) {
+            switch (type.getKind()) {
+                case LONG:
+                    return LONG;
+                case INT:
+                    return INT;
+                case SHORT:
+                    return SHORT;
+                case BYTE:
+                    return BYTE;
+                case BOOLEAN:
+                    return BOOLEAN;
+                case DOUBLE:
+                    return DOUBLE;
+                case FLOAT:
+                    return FLOAT;
+                default:
+                    break;
+            }
+            String name = type.toString();
+            if (name.equals("java.lang.String")) {
+                return STRING;
+            }
+            if (name.equals("byte[]")) {
+                return BYTES;
+            }
+            return null;
+        }
+    }
+}